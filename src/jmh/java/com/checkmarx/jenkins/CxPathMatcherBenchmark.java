@@ -0,0 +1,152 @@
+package com.checkmarx.jenkins;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CxSourceFilter} with matching every path against every glob using Ant's {@link SelectorUtils},
+ * which is how filter patterns used to be evaluated. Both use the default filter pattern from cxconfig.xml
+ * plus a few folder exclusions, on a generated tree of one million paths.
+ * <p>
+ * Run with {@code gradle jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CxPathMatcherBenchmark {
+
+    private static final String FOLDER_EXCLUSIONS = "node_modules, .git, target, build, dist";
+
+    private static final String[] DIRECTORIES = {"src", "main", "java", "com", "app", "web", "lib", "test", "util",
+            "node_modules", "target", "bin", "assets", "api", "core", "model", "service", ".git", "docs", "build"};
+    private static final String[] EXTENSIONS = {".java", ".js", ".ts", ".xml", ".json", ".class", ".png", ".jar",
+            ".html", ".css", ".py", ".cs", ".md", ".tar.gz", ".properties", ".svg", ".go", ".c", ".h", ".yml"};
+
+    @Param("1000000")
+    private int pathCount;
+
+    private List<String> paths;
+    private List<String> includes;
+    private List<String> excludes;
+    private List<String> excludedFolders;
+    private CxSourceFilter filter;
+
+    @Setup
+    public void setUp() throws Exception {
+        Properties configuration = new Properties();
+        try (InputStream in = CxPathMatcherBenchmark.class.getResourceAsStream("cxconfig.xml")) {
+            configuration.loadFromXML(in);
+        }
+        String filterPattern = configuration.getProperty("DefaultFilterPattern");
+
+        includes = new ArrayList<>();
+        excludes = new ArrayList<>();
+        for (String pattern : filterPattern.split(",")) {
+            String trimmed = pattern.trim();
+            if (trimmed.startsWith("!")) {
+                excludes.add(trimmed.substring(1));
+            } else if (!trimmed.isEmpty()) {
+                includes.add(trimmed);
+            }
+        }
+        excludedFolders = new ArrayList<>();
+        for (String folder : FOLDER_EXCLUSIONS.split(",")) {
+            excludedFolders.add(folder.trim());
+        }
+        filter = new CxSourceFilter(filterPattern, FOLDER_EXCLUSIONS);
+
+        Random random = new Random(42);
+        paths = new ArrayList<>(pathCount);
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < pathCount; i++) {
+            path.setLength(0);
+            int depth = 1 + random.nextInt(8);
+            for (int d = 0; d < depth; d++) {
+                path.append(DIRECTORIES[random.nextInt(DIRECTORIES.length)]).append('/');
+            }
+            path.append("File").append(i).append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+            paths.add(path.toString());
+        }
+    }
+
+    @Benchmark
+    public int compiledMatcher() {
+        int included = 0;
+        for (String path : paths) {
+            if (!isInExcludedDirectory(path) && filter.isIncluded(path)) {
+                included++;
+            }
+        }
+        return included;
+    }
+
+    @Benchmark
+    public int selectorUtils() {
+        int included = 0;
+        for (String path : paths) {
+            if (isIncludedBySelectorUtils(path)) {
+                included++;
+            }
+        }
+        return included;
+    }
+
+    /**
+     * During a real walk excluded directories are pruned, here every parent of the path is checked instead.
+     */
+    private boolean isInExcludedDirectory(String path) {
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            if (filter.isExcludedDirectory(path.substring(0, slash))) {
+                return true;
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+        return false;
+    }
+
+    private boolean isIncludedBySelectorUtils(String path) {
+        String[] segments = path.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            for (String folder : excludedFolders) {
+                if (SelectorUtils.match(folder, segments[i])) {
+                    return false;
+                }
+            }
+        }
+        for (String exclude : excludes) {
+            if (SelectorUtils.matchPath(exclude, path)) {
+                return false;
+            }
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (String include : includes) {
+            if (SelectorUtils.matchPath(include, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
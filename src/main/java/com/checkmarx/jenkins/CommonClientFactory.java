@@ -5,6 +5,7 @@ import com.cx.restclient.configuration.CxScanConfig;
 import com.cx.restclient.exception.CxClientException;
 import org.slf4j.Logger;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 
 class CommonClientFactory {
@@ -30,4 +31,23 @@ class CommonClientFactory {
 
         return new CxShragaClient(config, log);
     }
+
+    /**
+     * Returns a logged-in client that is shared with other callers using the same credentials.
+     * The returned session must be closed after use.
+     */
+    static CxSessionPool.Session getSession(CxCredentials credentials,
+                                            boolean enableCertificateValidation,
+                                            Logger log)
+            throws IOException, CxClientException {
+        return CxSessionPool.getInstance().lease(credentials, enableCertificateValidation, log);
+    }
+
+    /**
+     * Returns a client that is initialized for the project of the given configuration and shared with later scans of
+     * the same project. The returned session must be closed after use.
+     */
+    static CxSessionPool.Session getScanSession(CxScanConfig config, Logger log) throws IOException, CxClientException {
+        return CxSessionPool.getInstance().leaseForScan(config, log);
+    }
 }
@@ -0,0 +1,93 @@
+package com.checkmarx.jenkins;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Routes the java.util.logging records of the dependency scan components to the console of the build that runs them.
+ * <p>
+ * A single handler is installed on the {@code org.whitesource} logger, so records of other components never reach it.
+ * Each record is written to the console of the build that opened a {@link Scope} on the logging thread.
+ * The scope is not inherited by new threads, since pooled threads would keep the console of the build that created
+ * them; tasks that run on other threads open their own scope with the console of their build.
+ * Builds that run on the same agent at the same time only share this lock-free handler, and each of them receives
+ * only its own records.
+ */
+class CxBuildLogRouter {
+
+    private static final String COMPONENT_LOGGER_NAME = "org.whitesource";
+
+    // Strong reference, otherwise the logger and its handler may be garbage collected.
+    private static final Logger componentLogger = Logger.getLogger(COMPONENT_LOGGER_NAME);
+    private static final ThreadLocal<PrintStream> currentConsole = new ThreadLocal<>();
+
+    static {
+        componentLogger.addHandler(new RoutingHandler(new ComponentScanFormatter()));
+    }
+
+    private CxBuildLogRouter() {
+    }
+
+    /**
+     * Sends the component logs of the current thread to the given console until the returned scope is closed.
+     */
+    static Scope open(PrintStream console) {
+        Scope scope = new Scope(currentConsole.get());
+        currentConsole.set(console);
+        return scope;
+    }
+
+    static class Scope implements Closeable {
+        private final PrintStream previous;
+
+        private Scope(PrintStream previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            PrintStream console = currentConsole.get();
+            if (console != null) {
+                console.flush();
+            }
+            if (previous != null) {
+                currentConsole.set(previous);
+            } else {
+                currentConsole.remove();
+            }
+        }
+    }
+
+    private static class RoutingHandler extends Handler {
+
+        private RoutingHandler(Formatter formatter) {
+            setFormatter(formatter);
+            setLevel(Level.ALL);
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            PrintStream console = currentConsole.get();
+            if (console == null || !isLoggable(record)) {
+                return;
+            }
+            String message = getFormatter().format(record);
+            if (!message.isEmpty()) {
+                console.print(message);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.ManagementLink;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * "Checkmarx Dashboard" page under Manage Jenkins, showing the current vulnerability counts of all jobs that use
+ * Checkmarx by folder, team and server, and their daily history. The page shows the rollups kept by
+ * {@link CxSecurityDashboard}, it does not go through jobs or builds.
+ */
+@Extension
+public class CxDashboardLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "/plugin/checkmarx/CxIcon48x48.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Checkmarx Dashboard";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Current vulnerability counts of all jobs that use Checkmarx, by folder, team and server.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "checkmarx-dashboard";
+    }
+
+    public CxSecurityDashboard.Totals getTotal() {
+        return CxSecurityDashboard.getInstance().getTotal();
+    }
+
+    public List<CxSecurityDashboard.Totals> getByServer() {
+        return CxSecurityDashboard.getInstance().getByServer();
+    }
+
+    public List<CxSecurityDashboard.Totals> getByTeam() {
+        return CxSecurityDashboard.getInstance().getByTeam();
+    }
+
+    public List<CxSecurityDashboard.Totals> getByFolder() {
+        return CxSecurityDashboard.getInstance().getByFolder();
+    }
+
+    public List<CxSecurityDashboard.Totals> getHistory() {
+        return CxSecurityDashboard.getInstance().getHistory();
+    }
+
+    /**
+     * Reads the saved dashboard, once the jobs are loaded in case it has to be created from their trend indexes.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void loadDashboard() {
+        CxSecurityDashboard.getInstance().load();
+    }
+
+    /**
+     * Saves the changes made since the last scheduled save.
+     */
+    @Terminator
+    public static void saveDashboard() throws IOException {
+        CxSecurityDashboard.getInstance().save();
+    }
+}
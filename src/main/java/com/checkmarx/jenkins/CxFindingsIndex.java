@@ -0,0 +1,201 @@
+package com.checkmarx.jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view of the findings of a SAST scan, built once from {@code ScanReport.xml} at build time (see
+ * {@link CxFindingsIndexWriter}) and memory-mapped for reads, so that per-query and per-file details do not require
+ * parsing the XML report again.
+ * <p>
+ * The file holds one row per result, stored by column:
+ * <pre>
+ * header      magic, version, row count, string count (4 ints)
+ * queryId     int[rows]
+ * queryName   int[rows]   index into the strings
+ * cwe         int[rows]
+ * file        int[rows]   index into the strings
+ * line        int[rows]
+ * fingerprint long[rows]  query id and similarity id, stable across scans of the same project
+ * severity    byte[rows]  see {@link #SEVERITY_HIGH} and the other severities
+ * state       byte[rows]  result state as in CxSAST, e.g. 0 for "To Verify"
+ * flags       byte[rows]  see {@link #FLAG_NEW} and {@link #FLAG_FALSE_POSITIVE}
+ * strings     int[strings + 1] offsets, then the UTF-8 bytes of the strings
+ * </pre>
+ * Query names and file names share one dictionary, so every distinct string is stored once.
+ */
+class CxFindingsIndex {
+
+    static final String FILE_NAME = "ScanReport.idx";
+
+    static final int MAGIC = 0x43584649;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    static final int SEVERITY_INFO = 0;
+    static final int SEVERITY_LOW = 1;
+    static final int SEVERITY_MEDIUM = 2;
+    static final int SEVERITY_HIGH = 3;
+    static final int SEVERITY_UNKNOWN = -1;
+
+    static final int FLAG_NEW = 1;
+    static final int FLAG_FALSE_POSITIVE = 2;
+
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final int queryIdOffset;
+    private final int queryNameOffset;
+    private final int cweOffset;
+    private final int fileOffset;
+    private final int lineOffset;
+    private final int fingerprintOffset;
+    private final int severityOffset;
+    private final int stateOffset;
+    private final int flagsOffset;
+    private final int stringOffsetsOffset;
+    private final int stringDataOffset;
+    private final String[] strings;
+
+    private CxFindingsIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported findings index format");
+        }
+        rows = buffer.getInt(8);
+        strings = new String[buffer.getInt(12)];
+
+        queryIdOffset = HEADER_SIZE;
+        queryNameOffset = queryIdOffset + rows * 4;
+        cweOffset = queryNameOffset + rows * 4;
+        fileOffset = cweOffset + rows * 4;
+        lineOffset = fileOffset + rows * 4;
+        fingerprintOffset = lineOffset + rows * 4;
+        severityOffset = fingerprintOffset + rows * 8;
+        stateOffset = severityOffset + rows;
+        flagsOffset = stateOffset + rows;
+        stringOffsetsOffset = flagsOffset + rows;
+        stringDataOffset = stringOffsetsOffset + (strings.length + 1) * 4;
+        if (stringDataOffset > buffer.capacity()
+                || stringDataOffset + buffer.getInt(stringOffsetsOffset + strings.length * 4) > buffer.capacity()) {
+            throw new IOException("Truncated findings index");
+        }
+    }
+
+    static CxFindingsIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            return new CxFindingsIndex(buffer);
+        }
+    }
+
+    /**
+     * Reads the whole file into the heap instead of mapping it, for a single use. A mapping is only released when it
+     * is garbage collected, and until then the file cannot be deleted on Windows, e.g. with its build.
+     */
+    static CxFindingsIndex read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return new CxFindingsIndex(ByteBuffer.wrap(bytes));
+        }
+    }
+
+    int size() {
+        return rows;
+    }
+
+    int getQueryId(int row) {
+        return buffer.getInt(queryIdOffset + row * 4);
+    }
+
+    String getQueryName(int row) {
+        return getString(buffer.getInt(queryNameOffset + row * 4));
+    }
+
+    int getCwe(int row) {
+        return buffer.getInt(cweOffset + row * 4);
+    }
+
+    String getFileName(int row) {
+        return getString(buffer.getInt(fileOffset + row * 4));
+    }
+
+    int getLine(int row) {
+        return buffer.getInt(lineOffset + row * 4);
+    }
+
+    long getFingerprint(int row) {
+        return buffer.getLong(fingerprintOffset + row * 8);
+    }
+
+    int getSeverity(int row) {
+        return buffer.get(severityOffset + row);
+    }
+
+    int getState(int row) {
+        return buffer.get(stateOffset + row);
+    }
+
+    boolean isNew(int row) {
+        return (buffer.get(flagsOffset + row) & FLAG_NEW) != 0;
+    }
+
+    boolean isFalsePositive(int row) {
+        return (buffer.get(flagsOffset + row) & FLAG_FALSE_POSITIVE) != 0;
+    }
+
+    /**
+     * @return number of results per severity, indexed by {@link #SEVERITY_INFO} to {@link #SEVERITY_HIGH}
+     */
+    int[] countBySeverity() {
+        int[] counts = new int[SEVERITY_HIGH + 1];
+        for (int row = 0; row < rows; row++) {
+            int severity = getSeverity(row);
+            if (severity >= 0 && severity < counts.length) {
+                counts[severity]++;
+            }
+        }
+        return counts;
+    }
+
+    String getString(int index) {
+        String value = strings[index];
+        if (value == null) {
+            int start = buffer.getInt(stringOffsetsOffset + index * 4);
+            int end = buffer.getInt(stringOffsetsOffset + (index + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringDataOffset + start);
+            view.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            // Racing threads decode the same value, which is harmless.
+            strings[index] = value;
+        }
+        return value;
+    }
+
+    static int parseSeverity(String severity) {
+        if (severity == null) {
+            return SEVERITY_UNKNOWN;
+        }
+        switch (severity.trim().toLowerCase()) {
+            case "high":
+                return SEVERITY_HIGH;
+            case "medium":
+                return SEVERITY_MEDIUM;
+            case "low":
+                return SEVERITY_LOW;
+            case "info":
+            case "information":
+                return SEVERITY_INFO;
+            default:
+                return SEVERITY_UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.checkmarx.jenkins;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link CxFindingsIndex} from a CxSAST XML report. The report is read as a stream, so the XML tree is never
+ * held in memory.
+ */
+class CxFindingsIndexWriter {
+
+    private int rows;
+    private int[] queryIds = new int[1024];
+    private int[] queryNames = new int[1024];
+    private int[] cwes = new int[1024];
+    private int[] files = new int[1024];
+    private int[] lines = new int[1024];
+    private long[] fingerprints = new long[1024];
+    private byte[] severities = new byte[1024];
+    private byte[] states = new byte[1024];
+    private byte[] flags = new byte[1024];
+
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    private CxFindingsIndexWriter() {
+    }
+
+    /**
+     * Indexes the given XML report, which may be compressed (see {@link CxReportStorage}).
+     *
+     * @return number of indexed results
+     */
+    static int write(File xmlReport, File index) throws IOException {
+        CxFindingsIndexWriter writer = new CxFindingsIndexWriter();
+        try (InputStream in = CxReportStorage.openForRead(xmlReport)) {
+            writer.parse(in);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse " + xmlReport.getName() + ": " + e.getMessage(), e);
+        }
+
+        // Written next to the index first, so that readers never map a partial file.
+        File tempIndex = new File(index.getParentFile(), index.getName() + ".tmp");
+        writer.writeTo(tempIndex);
+        if (index.exists() && !index.delete() || !tempIndex.renameTo(index)) {
+            tempIndex.delete();
+            throw new IOException("Failed to write " + index);
+        }
+        return writer.rows;
+    }
+
+    private void parse(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            int queryId = 0;
+            int queryName = 0;
+            int cwe = 0;
+            int querySeverity = CxFindingsIndex.SEVERITY_UNKNOWN;
+            boolean inResult = false;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    if ("Query".equals(element)) {
+                        queryId = parseInt(reader.getAttributeValue(null, "id"));
+                        queryName = intern(reader.getAttributeValue(null, "name"));
+                        cwe = parseInt(reader.getAttributeValue(null, "cweId"));
+                        querySeverity = CxFindingsIndex.parseSeverity(reader.getAttributeValue(null, "Severity"));
+                    } else if ("Result".equals(element)) {
+                        ensureCapacity();
+                        String severity = reader.getAttributeValue(null, "Severity");
+                        queryIds[rows] = queryId;
+                        queryNames[rows] = queryName;
+                        cwes[rows] = cwe;
+                        files[rows] = intern(reader.getAttributeValue(null, "FileName"));
+                        lines[rows] = parseInt(reader.getAttributeValue(null, "Line"));
+                        severities[rows] = (byte) (severity != null ? CxFindingsIndex.parseSeverity(severity) : querySeverity);
+                        states[rows] = (byte) parseInt(reader.getAttributeValue(null, "state"));
+                        byte rowFlags = 0;
+                        if ("New".equalsIgnoreCase(reader.getAttributeValue(null, "Status"))) {
+                            rowFlags |= CxFindingsIndex.FLAG_NEW;
+                        }
+                        if ("True".equalsIgnoreCase(reader.getAttributeValue(null, "FalsePositive"))) {
+                            rowFlags |= CxFindingsIndex.FLAG_FALSE_POSITIVE;
+                        }
+                        flags[rows] = rowFlags;
+                        fingerprints[rows] = (long) queryId << 32;
+                        inResult = true;
+                    } else if ("Path".equals(element) && inResult) {
+                        int similarityId = parseInt(reader.getAttributeValue(null, "SimilarityId"));
+                        fingerprints[rows] = ((long) queryId << 32) | (similarityId & 0xFFFFFFFFL);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inResult && "Result".equals(reader.getLocalName())) {
+                    rows++;
+                    inResult = false;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeTo(File file) throws IOException {
+        byte[][] encoded = new byte[strings.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            out.writeInt(CxFindingsIndex.MAGIC);
+            out.writeInt(CxFindingsIndex.VERSION);
+            out.writeInt(rows);
+            out.writeInt(encoded.length);
+            writeInts(out, queryIds);
+            writeInts(out, queryNames);
+            writeInts(out, cwes);
+            writeInts(out, files);
+            writeInts(out, lines);
+            for (int row = 0; row < rows; row++) {
+                out.writeLong(fingerprints[row]);
+            }
+            out.write(severities, 0, rows);
+            out.write(states, 0, rows);
+            out.write(flags, 0, rows);
+
+            int offset = 0;
+            for (byte[] value : encoded) {
+                out.writeInt(offset);
+                offset += value.length;
+            }
+            out.writeInt(offset);
+            for (byte[] value : encoded) {
+                out.write(value);
+            }
+        }
+    }
+
+    private void writeInts(DataOutputStream out, int[] column) throws IOException {
+        for (int row = 0; row < rows; row++) {
+            out.writeInt(column[row]);
+        }
+    }
+
+    private int intern(String value) {
+        String key = value != null ? value : "";
+        Integer index = stringIndex.get(key);
+        if (index == null) {
+            index = strings.size();
+            strings.add(key);
+            stringIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private void ensureCapacity() {
+        if (rows < queryIds.length) {
+            return;
+        }
+        int capacity = queryIds.length * 2;
+        queryIds = Arrays.copyOf(queryIds, capacity);
+        queryNames = Arrays.copyOf(queryNames, capacity);
+        cwes = Arrays.copyOf(cwes, capacity);
+        files = Arrays.copyOf(files, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        fingerprints = Arrays.copyOf(fingerprints, capacity);
+        severities = Arrays.copyOf(severities, capacity);
+        states = Arrays.copyOf(states, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private static int parseInt(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.jelly.XMLOutput;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the most recently viewed HTML reports in memory, so that build pages that are opened by many users at the same
+ * time do not read and decode the same report again for every view.
+ * <p>
+ * The cache is bounded by the total size of the cached reports (2 bytes per character), 128 MB by default, see the
+ * {@code com.checkmarx.jenkins.CxHtmlReportCache.maxSize} system property. Reports larger than half of it are not
+ * cached, they are streamed from disk instead. Reports are written to the page in chunks, never as a single string.
+ */
+class CxHtmlReportCache {
+
+    private static final long MAX_SIZE = Long.getLong(CxHtmlReportCache.class.getName() + ".maxSize", 128L * 1024 * 1024);
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final CxHtmlReportCache INSTANCE = new CxHtmlReportCache();
+
+    // Access ordered, the least recently viewed report comes first.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private CxHtmlReportCache() {
+    }
+
+    static CxHtmlReportCache getInstance() {
+        return INSTANCE;
+    }
+
+    void write(File report, XMLOutput out) throws IOException, SAXException {
+        char[] content = get(report);
+        if (content != null) {
+            for (int offset = 0; offset < content.length; offset += CHUNK_SIZE) {
+                out.characters(content, offset, Math.min(CHUNK_SIZE, content.length - offset));
+            }
+            return;
+        }
+
+        try (Reader reader = CxReportStorage.openReader(report)) {
+            char[] buffer = new char[CHUNK_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                out.characters(buffer, 0, read);
+            }
+        }
+    }
+
+    String read(File report) throws IOException {
+        char[] content = get(report);
+        if (content != null) {
+            return new String(content);
+        }
+        return CxReportStorage.readString(report);
+    }
+
+    /**
+     * @return the content of the report, or null if it is too large to be cached
+     */
+    private char[] get(File report) throws IOException {
+        String key = report.getAbsolutePath();
+        long lastModified = report.lastModified();
+        long length = report.length();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+                return entry.content;
+            }
+        }
+
+        long contentLength = CxReportStorage.isCompressed(report) ? CxReportStorage.getUncompressedLength(report) : length;
+        if (contentLength * 2 > MAX_SIZE / 2) {
+            return null;
+        }
+
+        char[] content;
+        try (Reader reader = CxReportStorage.openReader(report)) {
+            content = IOUtils.toCharArray(reader);
+        }
+        put(key, new Entry(lastModified, length, content));
+        return content;
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            size -= previous.getSize();
+        }
+        size += entry.getSize();
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > MAX_SIZE && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest != entry) {
+                size -= eldest.getSize();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final long lastModified;
+        private final long length;
+        private final char[] content;
+
+        private Entry(long lastModified, long length, char[] content) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.content = content;
+        }
+
+        private long getSize() {
+            return content.length * 2L;
+        }
+    }
+}
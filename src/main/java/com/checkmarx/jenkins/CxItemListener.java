@@ -0,0 +1,30 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+
+/**
+ * Keeps the {@link CxSecurityDashboard} up to date as jobs are deleted, renamed or moved, and drops the
+ * {@link CxTrendIndex} kept in memory for them.
+ */
+@Extension
+public class CxItemListener extends ItemListener {
+
+    @Override
+    public void onDeleted(Item item) {
+        CxTrendIndex.forget(item);
+        if (item instanceof Job) {
+            CxSecurityDashboard.getInstance().remove(item.getFullName());
+        }
+    }
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        CxTrendIndex.forget(item);
+        if (item instanceof Job) {
+            CxSecurityDashboard.getInstance().rename(oldFullName, newFullName, CxSecurityDashboard.getFolder((Job<?, ?>) item));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+
+import java.util.List;
+
+/**
+ * "Checkmarx Scans" page under Manage Jenkins, showing the scan queues per server and the state of the shared
+ * Checkmarx connections.
+ */
+@Extension
+public class CxManagementLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "/plugin/checkmarx/CxIcon48x48.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Checkmarx Scans";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Scan queues, pending scans and connection statistics of the Checkmarx plugin.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "checkmarx-scans";
+    }
+
+    public List<CxScanAdmissionController.ServerQueue> getServerQueues() {
+        return CxScanAdmissionController.getInstance().getServerQueues();
+    }
+
+    public int getMaxConcurrentScansPerServer() {
+        CxScanBuilder.DescriptorImpl descriptor = getBuilderDescriptor();
+        return descriptor != null ? descriptor.getMaxConcurrentScansPerServerValue() : 0;
+    }
+
+    public int getPendingScanCount() {
+        CxScanWaitScheduler scheduler = CxScanWaitScheduler.get();
+        return scheduler != null ? scheduler.getPendingScanCount() : 0;
+    }
+
+    public String getPollingStatistics() {
+        CxScanWaitScheduler scheduler = CxScanWaitScheduler.get();
+        return scheduler != null ? scheduler.getMetrics().toString() : "";
+    }
+
+    public String getQueuePollLatency() {
+        CxScanWaitScheduler scheduler = CxScanWaitScheduler.get();
+        return scheduler != null ? scheduler.getMetrics().getBatchLatency().getBuckets() : "";
+    }
+
+    public String getStatusPollLatency() {
+        CxScanWaitScheduler scheduler = CxScanWaitScheduler.get();
+        return scheduler != null ? scheduler.getMetrics().getStatusLatency().getBuckets() : "";
+    }
+
+    public String getSessionPoolStatistics() {
+        return CxSessionPool.getInstance().getStatistics();
+    }
+
+    private static CxScanBuilder.DescriptorImpl getBuilderDescriptor() {
+        return (CxScanBuilder.DescriptorImpl) Jenkins.getInstance().getDescriptor(CxScanBuilder.class);
+    }
+}
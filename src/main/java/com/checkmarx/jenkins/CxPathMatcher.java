@@ -0,0 +1,225 @@
+package com.checkmarx.jenkins;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Matches relative paths against a list of Ant-style globs that is compiled once, instead of evaluating every glob
+ * for every path.
+ * <p>
+ * The common glob shapes are reduced to hash lookups:
+ * <ul>
+ * <li>{@code **}{@code /*.ext} - file name suffix,</li>
+ * <li>{@code **}{@code /name} - file name,</li>
+ * <li>{@code **}{@code /dir/**} and {@code **}{@code /dir/**}{@code /*} - name of any parent directory. Such directories
+ * can be skipped as a whole, see {@link #matchesDirectory}. Like in Ant, {@code **}{@code /dir/**} also matches a
+ * file named {@code dir}.</li>
+ * </ul>
+ * All the other globs are translated to regular expressions and combined into a single pattern.
+ */
+class CxPathMatcher {
+
+    private static final String ANY_PARENT = "**/";
+
+    private final Set<String> suffixes = new HashSet<>();
+    private final Set<String> names = new HashSet<>();
+    private final Set<String> directoryNames = new HashSet<>();
+    private final List<String> pathRegexes = new ArrayList<>();
+    private final List<String> directoryRegexes = new ArrayList<>();
+    private Pattern pathPattern;
+    private Pattern directoryPattern;
+    private int maxSuffixDots;
+
+    private CxPathMatcher() {
+    }
+
+    static CxPathMatcher compile(List<String> globs) {
+        CxPathMatcher matcher = new CxPathMatcher();
+        for (String glob : globs) {
+            matcher.add(glob);
+        }
+        matcher.pathPattern = join(matcher.pathRegexes);
+        matcher.directoryPattern = join(matcher.directoryRegexes);
+        return matcher;
+    }
+
+    boolean isEmpty() {
+        return suffixes.isEmpty() && names.isEmpty() && directoryNames.isEmpty() && pathPattern == null;
+    }
+
+    /**
+     * @param path file path relative to the scanned directory, with '/' separators
+     */
+    boolean matches(String path) {
+        int nameStart = path.lastIndexOf('/') + 1;
+        String name = nameStart == 0 ? path : path.substring(nameStart);
+        if (names.contains(name) || matchesSuffix(name)) {
+            return true;
+        }
+
+        if (!directoryNames.isEmpty()) {
+            int segmentStart = 0;
+            while (segmentStart < nameStart) {
+                int segmentEnd = path.indexOf('/', segmentStart);
+                if (directoryNames.contains(path.substring(segmentStart, segmentEnd))) {
+                    return true;
+                }
+                segmentStart = segmentEnd + 1;
+            }
+        }
+
+        return pathPattern != null && pathPattern.matcher(path).matches();
+    }
+
+    /**
+     * Tells whether all the files under the given directory match, so that the directory does not need to be walked.
+     * Parent directories are expected to have been checked already.
+     *
+     * @param path directory path relative to the scanned directory, with '/' separators
+     */
+    boolean matchesDirectory(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return directoryNames.contains(name) || directoryPattern != null && directoryPattern.matcher(path).matches();
+    }
+
+    private boolean matchesSuffix(String name) {
+        if (suffixes.isEmpty()) {
+            return false;
+        }
+        // Check ".gz" first, then ".tar.gz" and so on, up to the longest compiled suffix.
+        int dot = name.length();
+        for (int i = 0; i < maxSuffixDots; i++) {
+            dot = name.lastIndexOf('.', dot - 1);
+            if (dot < 0) {
+                return false;
+            }
+            if (suffixes.contains(name.substring(dot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(String glob) {
+        String directoryGlob = stripDirectorySuffix(glob);
+        if (directoryGlob != null) {
+            // As in Ant, a trailing '**' also matches zero segments, so 'dir/**' matches the path 'dir' itself.
+            boolean matchesSelf = glob.endsWith("/**");
+            String name = anyParentLiteral(directoryGlob);
+            if (name != null) {
+                directoryNames.add(name);
+                if (matchesSelf) {
+                    names.add(name);
+                }
+            } else {
+                String regex = toRegex(directoryGlob);
+                directoryRegexes.add(regex);
+                pathRegexes.add(regex + (matchesSelf ? "(?:/.*)?" : "/.*"));
+            }
+            return;
+        }
+
+        String name = anyParentLiteral(glob);
+        if (name != null) {
+            names.add(name);
+            return;
+        }
+
+        if (glob.startsWith(ANY_PARENT + "*")) {
+            String suffix = glob.substring(ANY_PARENT.length() + 1);
+            if (suffix.startsWith(".") && isLiteral(suffix)) {
+                suffixes.add(suffix);
+                maxSuffixDots = Math.max(maxSuffixDots, countDots(suffix));
+                return;
+            }
+        }
+
+        pathRegexes.add(toRegex(glob));
+    }
+
+    /**
+     * @return the directory part of a glob that matches everything under some directories, or null
+     */
+    private static String stripDirectorySuffix(String glob) {
+        if (glob.endsWith("/**/*")) {
+            return glob.substring(0, glob.length() - "/**/*".length());
+        }
+        if (glob.endsWith("/**")) {
+            return glob.substring(0, glob.length() - "/**".length());
+        }
+        return null;
+    }
+
+    /**
+     * @return the name in a glob like {@code **}{@code /name}, or null if the glob has another shape
+     */
+    private static String anyParentLiteral(String glob) {
+        if (!glob.startsWith(ANY_PARENT)) {
+            return null;
+        }
+        String name = glob.substring(ANY_PARENT.length());
+        return !name.isEmpty() && isLiteral(name) && name.indexOf('/') < 0 ? name : null;
+    }
+
+    private static boolean isLiteral(String value) {
+        return value.indexOf('*') < 0 && value.indexOf('?') < 0;
+    }
+
+    private static int countDots(String value) {
+        int count = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '.') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Translates an Ant-style glob to a regular expression: '**' matches any number of directories,
+     * '*' and '?' match within a single path segment.
+     */
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 3;
+                continue;
+            }
+            if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+                continue;
+            }
+            if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+        return regex.toString();
+    }
+
+    private static Pattern join(List<String> regexes) {
+        if (regexes.isEmpty()) {
+            return null;
+        }
+        StringBuilder alternation = new StringBuilder();
+        for (String regex : regexes) {
+            if (alternation.length() > 0) {
+                alternation.append('|');
+            }
+            alternation.append("(?:").append(regex).append(')');
+        }
+        return Pattern.compile(alternation.toString());
+    }
+}
@@ -0,0 +1,141 @@
+package com.checkmarx.jenkins;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the requests made by {@link CxScanWaitScheduler} to follow pending scans.
+ */
+class CxPollingMetrics {
+
+    // Upper bounds of the latency histogram buckets, the last bucket holds everything above.
+    private static final long[] LATENCY_BUCKETS_MILLIS = {50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final AtomicLong batchPolls = new AtomicLong();
+    private final AtomicLong statusPolls = new AtomicLong();
+    private final AtomicLong failedPolls = new AtomicLong();
+    private final AtomicLong scansPerBatch = new AtomicLong();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private final LatencyHistogram statusLatency = new LatencyHistogram();
+
+    void recordBatchPoll(int scanCount, long latencyMillis) {
+        batchPolls.incrementAndGet();
+        scansPerBatch.addAndGet(scanCount);
+        batchLatency.record(latencyMillis);
+    }
+
+    void recordStatusPoll(long latencyMillis) {
+        statusPolls.incrementAndGet();
+        statusLatency.record(latencyMillis);
+    }
+
+    void recordFailure() {
+        failedPolls.incrementAndGet();
+    }
+
+    long getBatchPolls() {
+        return batchPolls.get();
+    }
+
+    long getStatusPolls() {
+        return statusPolls.get();
+    }
+
+    long getFailedPolls() {
+        return failedPolls.get();
+    }
+
+    /**
+     * @return how many pending scans were served by one queue request on average.
+     */
+    double getAverageScansPerBatch() {
+        long polls = batchPolls.get();
+        return polls == 0 ? 0 : (double) scansPerBatch.get() / polls;
+    }
+
+    LatencyHistogram getBatchLatency() {
+        return batchLatency;
+    }
+
+    LatencyHistogram getStatusLatency() {
+        return statusLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Scan queue polls: %d (%.1f scans per poll, latency %s), scan status polls: %d (latency %s), failed polls: %d",
+                getBatchPolls(), getAverageScansPerBatch(), batchLatency, getStatusPolls(), statusLatency, getFailedPolls());
+    }
+
+    /**
+     * A fixed-bucket histogram of request latencies in milliseconds.
+     */
+    static class LatencyHistogram {
+        private final AtomicLongArray counts = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length + 1);
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+
+        void record(long latencyMillis) {
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS_MILLIS.length && latencyMillis > LATENCY_BUCKETS_MILLIS[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            total.incrementAndGet();
+            totalMillis.addAndGet(latencyMillis);
+        }
+
+        long getCount() {
+            return total.get();
+        }
+
+        long getAverageMillis() {
+            long count = total.get();
+            return count == 0 ? 0 : totalMillis.get() / count;
+        }
+
+        /**
+         * @return the upper bound of the bucket that contains the given percentile, or -1 for the overflow bucket.
+         */
+        long getPercentileMillis(double percentile) {
+            long count = total.get();
+            if (count == 0) {
+                return 0;
+            }
+            long threshold = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+                seen += counts.get(i);
+                if (seen >= threshold) {
+                    return LATENCY_BUCKETS_MILLIS[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return bucket labels mapped to counts, e.g. "&lt;=50ms=12".
+         */
+        String getBuckets() {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i <= LATENCY_BUCKETS_MILLIS.length; i++) {
+                if (result.length() > 0) {
+                    result.append(", ");
+                }
+                result.append(i < LATENCY_BUCKETS_MILLIS.length ? "<=" + LATENCY_BUCKETS_MILLIS[i] : ">" + LATENCY_BUCKETS_MILLIS[i - 1])
+                        .append("ms=").append(counts.get(i));
+            }
+            return result.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("avg %dms, p50 %s, p99 %s", getAverageMillis(),
+                    formatBound(getPercentileMillis(50)), formatBound(getPercentileMillis(99)));
+        }
+
+        private static String formatBound(long bucketMillis) {
+            return bucketMillis < 0 ? ">" + LATENCY_BUCKETS_MILLIS[LATENCY_BUCKETS_MILLIS.length - 1] + "ms" : "<=" + bucketMillis + "ms";
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.awt.*;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author denis
@@ -32,6 +33,9 @@ import java.util.List;
  */
 public class CxProjectResult implements Action {
 
+    private static final int MAX_GRAPH_DIMENSION = 2048;
+    private static final CxResultSeverity[] GRAPH_SEVERITIES = {CxResultSeverity.HIGH, CxResultSeverity.MEDIUM, CxResultSeverity.LOW};
+
     private AbstractProject owner;
 
     public CxProjectResult(AbstractProject owner) {
@@ -144,7 +148,7 @@ public class CxProjectResult implements Action {
             return;
         }
 
-        ChartUtil.generateGraph(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+        getChart(req).writePng(rsp);
     }
 
     /**
@@ -155,7 +159,51 @@ public class CxProjectResult implements Action {
         if (cxScanResult != null && req.checkIfModified(cxScanResult.owner.getTimestamp(), rsp)) {
             return;
         }
-        ChartUtil.generateClickableMap(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+        getChart(req).writeMap(rsp);
+    }
+
+    /**
+     * The image and the map are requested separately by the job page, both are produced by the first request, see
+     * {@link CxTrendChartCache}.
+     */
+    private CxTrendChartCache.Chart getChart(StaplerRequest req) throws IOException {
+        CxTrendIndex.Snapshot trend = CxTrendIndex.forJob(owner).read();
+        CxScanBuilder.DescriptorImpl descriptor = (CxScanBuilder.DescriptorImpl) Jenkins.getInstance().getDescriptor(CxScanBuilder.class);
+        int windowBuilds = descriptor != null ? descriptor.getTrendWindowBuildsValue() : CxScanBuilder.DescriptorImpl.DEFAULT_TREND_WINDOW_BUILDS;
+        int windowDays = descriptor != null ? descriptor.getTrendWindowDaysValue() : 0;
+        long now = System.currentTimeMillis();
+
+        // A days window moves every day.
+        String window = windowBuilds + "/" + windowDays + (windowDays > 0 ? "/" + TimeUnit.MILLISECONDS.toDays(now) : "");
+        CxTrendChartCache.Chart chart = CxTrendChartCache.getInstance().get(owner, trend, window, getSize(req), getRelPath(req));
+        synchronized (chart) {
+            if (!chart.isRendered()) {
+                List<CxTrendSeries.Point> points = CxTrendSeries.create(trend, CxTrendIndex.FLAG_SAST, windowBuilds, windowDays, now);
+                chart.render(createChart(req, buildDataSet(points)));
+            }
+        }
+        return chart;
+    }
+
+    /**
+     * The size requested by the page, or {@link #calcDefaultSize()}.
+     */
+    private Area getSize(StaplerRequest req) {
+        Area size = calcDefaultSize();
+        return new Area(parseDimension(req.getParameter("width"), size.width),
+                parseDimension(req.getParameter("height"), size.height));
+    }
+
+    private static int parseDimension(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int dimension = Integer.parseInt(value);
+            return dimension > 0 ? Math.min(dimension, MAX_GRAPH_DIMENSION) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     /**
@@ -173,30 +221,32 @@ public class CxProjectResult implements Action {
         }
     }
 
-    private CategoryDataset buildDataSet(StaplerRequest req) {
-
-        CxScanResult lastBuildAction = getLastSynchronousSASTBuildAction();
-        if (lastBuildAction == null) {
-            // We get here is there are no builds with scan results.
-            // In this case we generate an empty graph
-            DataSetBuilder<CxResultSeverity, String> dsb = new DataSetBuilder<CxResultSeverity, String>();
-
-            dsb.add(0, CxResultSeverity.HIGH, "0");
-            dsb.add(0, CxResultSeverity.MEDIUM, "0");
-            dsb.add(0, CxResultSeverity.LOW, "0");
-            return dsb.build();
-
-        } else {
-            DataSetBuilder<CxResultSeverity, ChartUtil.NumberOnlyBuildLabel> dsb = new DataSetBuilder<CxResultSeverity, ChartUtil.NumberOnlyBuildLabel>();
+    /**
+     * The points come from the {@link CxTrendIndex} of the job, so that no builds are loaded. Buckets of older builds
+     * are plotted with the counts of their last build.
+     */
+    private CategoryDataset buildDataSet(List<CxTrendSeries.Point> points) {
 
-            for (CxScanResult a = lastBuildAction; a != null; a = a.getPreviousResult()) {
-                dsb.add(a.getHighCount(), CxResultSeverity.HIGH, new ChartUtil.NumberOnlyBuildLabel((Run<?, ?>) a.owner));
-                dsb.add(a.getMediumCount(), CxResultSeverity.MEDIUM, new ChartUtil.NumberOnlyBuildLabel((Run<?, ?>) a.owner));
-                dsb.add(a.getLowCount(), CxResultSeverity.LOW, new ChartUtil.NumberOnlyBuildLabel((Run<?, ?>) a.owner));
+        DataSetBuilder<CxResultSeverity, BuildNumberLabel> dsb = new DataSetBuilder<CxResultSeverity, BuildNumberLabel>();
+        for (CxTrendSeries.Point point : points) {
+            BuildNumberLabel label = new BuildNumberLabel(point);
+            for (CxResultSeverity severity : GRAPH_SEVERITIES) {
+                dsb.add(point.getLast(getTrendColumn(severity)), severity, label);
             }
-            return dsb.build();
         }
+        CategoryDataset dataset = dsb.build();
+        if (dataset.getColumnCount() > 0) {
+            return dataset;
+        }
+
+        // We get here is there are no builds with scan results.
+        // In this case we generate an empty graph
+        DataSetBuilder<CxResultSeverity, String> empty = new DataSetBuilder<CxResultSeverity, String>();
 
+        empty.add(0, CxResultSeverity.HIGH, "0");
+        empty.add(0, CxResultSeverity.MEDIUM, "0");
+        empty.add(0, CxResultSeverity.LOW, "0");
+        return empty.build();
     }
 
     private JFreeChart createChart(StaplerRequest req, CategoryDataset dataset) {
@@ -240,10 +290,26 @@ public class CxProjectResult implements Action {
         StackedAreaRenderer ar = new StackedAreaRenderer2() {
             @Override
             public String generateURL(CategoryDataset dataset, int row, int column) {
-                ChartUtil.NumberOnlyBuildLabel label = (ChartUtil.NumberOnlyBuildLabel) dataset.getColumnKey(column);
-                return relPath + label.build.getNumber() + "/testReport/"; // TODO: Check if need to change testReport
+                BuildNumberLabel label = (BuildNumberLabel) dataset.getColumnKey(column);
+                return relPath + label.point.getLastBuild() + "/testReport/"; // TODO: Check if need to change testReport
                 // to checkmarx
             }
+
+            @Override
+            public String generateToolTip(CategoryDataset dataset, int row, int column) {
+                if (!(dataset.getColumnKey(column) instanceof BuildNumberLabel)) {
+                    return null;
+                }
+                BuildNumberLabel label = (BuildNumberLabel) dataset.getColumnKey(column);
+                CxResultSeverity severity = (CxResultSeverity) dataset.getRowKey(row);
+                int trendColumn = getTrendColumn(severity);
+                if (!label.point.isBucket()) {
+                    return severity + ": " + label.point.getLast(trendColumn) + " (" + label + ")";
+                }
+                return String.format("%s: %d in #%d, %d to %d in %d builds (%s)", severity,
+                        label.point.getLast(trendColumn), label.point.getLastBuild(), label.point.getMin(trendColumn),
+                        label.point.getMax(trendColumn), label.point.getBuilds(), label);
+            }
         };
         plot.setRenderer(ar);
         ar.setSeriesPaint(0, new Color(246, 0, 22)); // high.
@@ -264,6 +330,54 @@ public class CxProjectResult implements Action {
         return relPath;
     }
 
+    private static int getTrendColumn(CxResultSeverity severity) {
+        switch (severity) {
+            case HIGH:
+                return CxTrendIndex.HIGH;
+            case MEDIUM:
+                return CxTrendIndex.MEDIUM;
+            case LOW:
+                return CxTrendIndex.LOW;
+            default:
+                return CxTrendIndex.INFO;
+        }
+    }
+
+    /**
+     * Domain axis label of the trend graph, a build or a bucket of older builds. Unlike
+     * {@link ChartUtil.NumberOnlyBuildLabel} it needs only the build numbers, not the build.
+     */
+    private static class BuildNumberLabel implements Comparable<BuildNumberLabel> {
+
+        private final CxTrendSeries.Point point;
+        private final int number;
+
+        BuildNumberLabel(CxTrendSeries.Point point) {
+            this.point = point;
+            this.number = point.getLastBuild();
+        }
+
+        @Override
+        public int compareTo(BuildNumberLabel that) {
+            return Integer.compare(number, that.number);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BuildNumberLabel && ((BuildNumberLabel) o).number == number;
+        }
+
+        @Override
+        public int hashCode() {
+            return number;
+        }
+
+        @Override
+        public String toString() {
+            return point.isBucket() ? "#" + point.getFirstBuild() + "-" + number : "#" + number;
+        }
+    }
+
     @Extension
     public static class Factory extends TransientProjectActionFactory {
 
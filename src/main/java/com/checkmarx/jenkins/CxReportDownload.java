@@ -0,0 +1,241 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Serves a report file of a build to the browser.
+ * <p>
+ * Reports of a build rarely change once written, so responses carry an ETag derived from the build, the file name,
+ * size and modification time, and repeated requests are answered with 304 Not Modified. Single byte ranges are
+ * supported, so that PDF viewers can load the pages they show. Stored files, such as PDF reports, are sent straight
+ * from their {@link FileChannel}: with {@link FileChannel#transferTo} when the container's output stream is a channel,
+ * otherwise through a single buffer, without reading the file into the heap.
+ * Compressed reports (see {@link CxReportStorage}) are sent as they are stored to clients that accept gzip encoding,
+ * and decompressed for the others.
+ */
+class CxReportDownload {
+
+    private static final String CACHE_CONTROL = "private, max-age=86400";
+
+    private final File file;
+    private final String contentType;
+    private final String etagBase;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param buildId identifies the build that owns the file, e.g. {@link hudson.model.Run#getExternalizableId()}
+     */
+    CxReportDownload(File file, String contentType, String buildId) {
+        this.file = file;
+        this.contentType = contentType;
+        this.etagBase = DigestUtils.sha256Hex(buildId + '\n' + file.getName() + '\n' + file.length() + '\n' + file.lastModified())
+                .substring(0, 32);
+    }
+
+    void serve(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!file.isFile()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        boolean compressed = CxReportStorage.isCompressed(file);
+        String range = req.getHeader("Range");
+        boolean sendEncoded = compressed && range == null && acceptsGzip(req);
+        String etag = "\"" + etagBase + (sendEncoded ? "-gzip" : "") + "\"";
+        long lastModified = file.lastModified();
+
+        rsp.setHeader("ETag", etag);
+        rsp.setDateHeader("Last-Modified", lastModified);
+        rsp.setHeader("Cache-Control", CACHE_CONTROL);
+        rsp.setHeader("Accept-Ranges", "bytes");
+        if (compressed) {
+            rsp.setHeader("Vary", "Accept-Encoding");
+        }
+        if (isNotModified(req, etag, lastModified)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        rsp.setContentType(contentType);
+
+        if (sendEncoded) {
+            rsp.setHeader("Content-Encoding", "gzip");
+            rsp.setHeader("Content-Length", Long.toString(file.length()));
+            transfer(rsp, 0, file.length());
+            return;
+        }
+
+        long length = compressed ? CxReportStorage.getUncompressedLength(file) : file.length();
+        long start = 0;
+        long end = length - 1;
+        String ifRange = req.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                rsp.setHeader("Content-Range", "bytes */" + length);
+                rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        rsp.setHeader("Content-Length", Long.toString(count));
+        if (compressed) {
+            sendDecompressed(rsp, start, count);
+        } else {
+            transfer(rsp, start, count);
+        }
+    }
+
+    private static boolean acceptsGzip(StaplerRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    /**
+     * @return whether the If-None-Match header of the request lists the given ETag
+     */
+    static boolean matchesETag(StaplerRequest req, String etag) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = StringUtils.removeStart(candidate.trim(), "W/");
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNotModified(StaplerRequest req, String etag, long lastModified) {
+        if (req.getHeader("If-None-Match") != null) {
+            return matchesETag(req, etag);
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP dates have a resolution of one second.
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Parses a {@code Range} header with a single byte range.
+     *
+     * @return the first and last byte of the range, an empty array if the header should be ignored,
+     * or null if the range cannot be satisfied
+     */
+    static long[] parseRange(String header, long length) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            // Multiple ranges are not supported, the whole file is sent instead.
+            return new long[0];
+        }
+        value = value.substring("bytes=".length()).trim();
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+
+        try {
+            String first = value.substring(0, dash).trim();
+            String last = value.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            if (start >= length || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private void transfer(StaplerResponse rsp, long position, long count) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            OutputStream out = rsp.getOutputStream();
+            if (out instanceof WritableByteChannel) {
+                transfer(channel, (WritableByteChannel) out, position, count);
+            } else {
+                copy(channel, out, position, count);
+            }
+            out.flush();
+        }
+    }
+
+    private static void transfer(FileChannel channel, WritableByteChannel target, long position, long count)
+            throws IOException {
+        long sent = 0;
+        while (sent < count) {
+            long transferred = channel.transferTo(position + sent, count - sent, target);
+            if (transferred <= 0) {
+                break;
+            }
+            sent += transferred;
+        }
+    }
+
+    /**
+     * Reads the file straight into the array that is written to the stream, unlike a channel wrapped around the
+     * stream, which copies every chunk once more.
+     */
+    private static void copy(FileChannel channel, OutputStream out, long position, long count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(count, 1)));
+        long sent = 0;
+        while (sent < count) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), count - sent));
+            int read = channel.read(buffer, position + sent);
+            if (read <= 0) {
+                break;
+            }
+            out.write(buffer.array(), 0, read);
+            sent += read;
+        }
+    }
+
+    private void sendDecompressed(StaplerResponse rsp, long position, long count) throws IOException {
+        try (InputStream in = CxReportStorage.openForRead(file)) {
+            OutputStream out = rsp.getOutputStream();
+            IOUtils.copyLarge(in, out, position, count);
+            out.flush();
+        }
+    }
+}
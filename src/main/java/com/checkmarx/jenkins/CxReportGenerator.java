@@ -0,0 +1,188 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.common.summary.SummaryUtils;
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.dto.DependencyScanResults;
+import com.cx.restclient.dto.ScanResults;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import freemarker.template.TemplateException;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Produces the report files of a build: the HTML summary, the SAST XML and PDF reports and the OSA JSON reports.
+ * <p>
+ * The findings of the XML report are also indexed, see {@link CxFindingsIndex}.
+ * <p>
+ * When reports are transferred as files (see {@link CxScanBuilder#isTransferReportsAsFiles()}), all of them are
+ * produced on the agent by {@link #generateForTransfer} as the last stage of {@link CxScanCallable}. They are written,
+ * already compressed, to {@link #TRANSFER_FOLDER} and the controller copies that folder to the build directory in one
+ * pass. Only a {@link RemoteScanSummary} is sent back instead of the scan results. Otherwise the controller produces
+ * the reports itself after the scan.
+ */
+class CxReportGenerator {
+
+    /**
+     * Workspace folder that holds the reports while they are transferred to the controller.
+     */
+    static final String TRANSFER_FOLDER = "Checkmarx/.reports";
+
+    // Immutable, shared by the threads that write the reports. Streams UTF-8 straight to the file.
+    private static final ObjectWriter REPORT_JSON_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+    private final CxScanConfig config;
+    private final Logger log;
+
+    CxReportGenerator(CxScanConfig config, Logger log) {
+        this.config = config;
+        this.log = log;
+    }
+
+    /**
+     * Writes all the reports of the scan results to the transfer folder of the workspace, and copies the XML and HTML
+     * reports to the workspace {@link CxScanBuilder#REPORTS_FOLDER}. On success the reports path is set on the result,
+     * on failure it is left unset so that the controller produces the reports.
+     */
+    void generateForTransfer(File workspace, RemoteScanInfo result, String sastPdfLink) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        ScanResults scanResults = result.getScanResults();
+        SASTResults sastResults = scanResults.getSastResults();
+        DependencyScanResults dsResults = scanResults.getDependencyScanResults();
+        OSAResults osaResults = dsResults != null ? dsResults.getOsaResults() : null;
+        boolean sastReady = sastResults != null && sastResults.isSastResultsReady();
+        boolean osaReady = osaResults != null && osaResults.isOsaResultsReady();
+
+        File transferDir = new File(workspace, TRANSFER_FOLDER);
+        File reportsDir = new File(workspace, CxScanBuilder.REPORTS_FOLDER);
+        try {
+            FileUtils.deleteDirectory(transferDir);
+            if (sastPdfLink != null && sastResults != null) {
+                sastResults.setSastPDFLink(sastPdfLink);
+            }
+
+            File htmlReport = writeHtmlReport(scanResults, transferDir);
+            if (sastReady) {
+                writeSastReports(sastResults, transferDir);
+                writeFindingsIndex(transferDir);
+            }
+            if (osaReady) {
+                writeOsaReports(osaResults, transferDir);
+            }
+
+            copyToWorkspace(htmlReport, reportsDir);
+            copyToWorkspace(new File(transferDir, CxScanBuilder.SCAN_REPORT_XML), reportsDir);
+        } catch (IOException e) {
+            log.warn("Failed to generate reports on the agent, they will be generated on the controller: " + e.getMessage());
+            FileUtils.deleteQuietly(transferDir);
+            return;
+        }
+
+        result.setReportsPath(TRANSFER_FOLDER);
+        log.info(String.format("Reports generated on the agent in %d ms (%s).",
+                System.currentTimeMillis() - start, FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(transferDir))));
+    }
+
+    /**
+     * @return the HTML report, or null if the summary could not be rendered
+     */
+    File writeHtmlReport(ScanResults results, File dir) throws IOException {
+        String reportHTML;
+        try {
+            reportHTML = SummaryUtils.generateSummary(results.getSastResults(), results.getDependencyScanResults(), config);
+        } catch (TemplateException e) {
+            log.error("Failed to generate HTML report.", e);
+            return null;
+        }
+        File reportFile = new File(dir, CxScanResult.resolveHTMLReportName(config.getSastEnabled(), config.getDependencyScannerType()));
+        CxReportStorage.write(reportFile, reportHTML);
+        return reportFile;
+    }
+
+    private void writeSastReports(SASTResults sastResults, File dir) throws IOException {
+        if (sastResults.getRawXMLReport() != null && (config.getGenerateXmlReport() == null || config.getGenerateXmlReport())) {
+            CxReportStorage.write(new File(dir, CxScanBuilder.SCAN_REPORT_XML), sastResults.getRawXMLReport());
+        }
+        if (sastResults.getPDFReport() != null) {
+            CxReportStorage.write(new File(dir, CxScanResult.PDF_REPORT_NAME), sastResults.getPDFReport());
+        }
+    }
+
+    /**
+     * Indexes the XML report in the given directory, if there is one, see {@link CxFindingsIndex}. Failures are
+     * logged, the index is optional.
+     */
+    void writeFindingsIndex(File dir) {
+        File xmlReport = new File(dir, CxScanBuilder.SCAN_REPORT_XML);
+        if (!xmlReport.isFile()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            int results = CxFindingsIndexWriter.write(xmlReport, new File(dir, CxFindingsIndex.FILE_NAME));
+            log.info("Indexed " + results + " SAST results in " + (System.currentTimeMillis() - start) + " ms.");
+        } catch (IOException e) {
+            log.warn("Failed to index SAST results: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the three OSA reports in parallel, since the libraries and vulnerabilities lists can be large.
+     */
+    void writeOsaReports(OSAResults osaResults, File dir) throws InterruptedException {
+        List<Callable<Void>> reports = new ArrayList<>();
+        reports.add(jsonReportTask(osaResults.getResults(), new File(dir, CxScanBuilder.OSA_SUMMERY_JSON), "OSA summery json report"));
+        reports.add(jsonReportTask(osaResults.getOsaLibraries(), new File(dir, CxScanBuilder.OSA_LIBRARIES_JSON), "OSA libraries json report"));
+        reports.add(jsonReportTask(osaResults.getOsaVulnerabilities(), new File(dir, CxScanBuilder.OSA_VULNERABILITIES_JSON), "OSA vulnerabilities json report"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(reports.size(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Checkmarx OSA reports"));
+        try {
+            executor.invokeAll(reports);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<Void> jsonReportTask(final Object jsonObj, final File to, final String description) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                writeJsonObjectToFile(jsonObj, to, description);
+                return null;
+            }
+        };
+    }
+
+    private void writeJsonObjectToFile(Object jsonObj, File to, String description) {
+        try (OutputStream out = CxReportStorage.openForWrite(to)) {
+            REPORT_JSON_WRITER.writeValue(out, jsonObj);
+            log.info(description + " written to [" + to.getAbsolutePath() + "]");
+        } catch (Exception e) {
+            log.error("Failed to write " + description + " to [" + to.getAbsolutePath() + "]");
+        }
+    }
+
+    private static void copyToWorkspace(File report, File reportsDir) throws IOException {
+        if (report == null || !report.isFile()) {
+            return;
+        }
+        try (InputStream in = CxReportStorage.openForRead(report)) {
+            FileUtils.copyInputStreamToFile(in, new File(reportsDir, report.getName()));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes the report files that are kept in the build directory.
+ * <p>
+ * Reports are stored gzip compressed under their usual names, so that links and tools that expect those names keep
+ * working. The gzip header is the format marker: files that do not start with it were written by older versions of the
+ * plugin, or with compression turned off, and are read as they are. Tools that read the build directory directly must
+ * decompress these files, e.g. with {@code gzip -dc}. PDF reports are already compressed and are stored as they are.
+ * Compression can be turned off with the {@code com.checkmarx.jenkins.CxReportStorage.disableCompression} system
+ * property. Text reports are written and read as UTF-8.
+ */
+class CxReportStorage {
+
+    private static final boolean COMPRESS = !Boolean.getBoolean(CxReportStorage.class.getName() + ".disableCompression");
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CxReportStorage() {
+    }
+
+    /**
+     * Opens a report for writing. The caller must close the stream.
+     */
+    static OutputStream openForWrite(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+        OutputStream out = new FileOutputStream(file);
+        if (!COMPRESS || !isCompressible(file)) {
+            return new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+        try {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a report for reading, decompressing it if needed. The caller must close the stream.
+     */
+    static InputStream openForRead(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            return isCompressed(in) ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    static void write(File file, byte[] content) throws IOException {
+        try (OutputStream out = openForWrite(file)) {
+            out.write(content);
+        }
+    }
+
+    static void write(File file, String content) throws IOException {
+        write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Reader openReader(File file) throws IOException {
+        return new InputStreamReader(openForRead(file), StandardCharsets.UTF_8);
+    }
+
+    static String readString(File file) throws IOException {
+        try (InputStream in = openForRead(file)) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    static boolean isCompressed(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 2)) {
+            return isCompressed(in);
+        }
+    }
+
+    /**
+     * Reads the size of the content of a compressed report from the gzip trailer, without decompressing it.
+     * The trailer keeps the size modulo 2^32, which is enough for reports.
+     */
+    static long getUncompressedLength(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < 4) {
+                return 0;
+            }
+            raf.seek(raf.length() - 4);
+            int b0 = raf.read();
+            int b1 = raf.read();
+            int b2 = raf.read();
+            int b3 = raf.read();
+            return ((long) b3 << 24) | (b2 << 16) | (b1 << 8) | b0;
+        }
+    }
+
+    /**
+     * PDF content streams are compressed already, gzip would only cost time.
+     */
+    private static boolean isCompressible(File file) {
+        return !file.getName().toLowerCase(Locale.ENGLISH).endsWith(".pdf");
+    }
+
+    private static boolean isCompressed(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first >= 0 && second >= 0 && (first | (second << 8)) == GZIP_MAGIC;
+    }
+}
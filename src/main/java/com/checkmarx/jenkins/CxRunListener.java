@@ -0,0 +1,56 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Keeps the {@link CxTrendIndex} of a job up to date as its builds complete or are deleted, drops its trend graphs
+ * from the {@link CxTrendChartCache} and updates its counts in the {@link CxSecurityDashboard}.
+ */
+@Extension
+public class CxRunListener extends RunListener<Run<?, ?>> {
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    @Override
+    public void onCompleted(Run<?, ?> run, @Nonnull TaskListener listener) {
+        if (run.getAction(CxScanResult.class) == null) {
+            return;
+        }
+        updateTrend(run);
+    }
+
+    /**
+     * Adds a build with a {@link CxScanResult} to the trend of its job.
+     */
+    static void updateTrend(Run<?, ?> run) {
+        try {
+            CxTrendIndex index = CxTrendIndex.forJob(run.getParent());
+            index.add(run);
+            CxTrendChartCache.getInstance().invalidate(run.getParent());
+            CxSecurityDashboard.getInstance().update(run.getParent(), index.read(), run);
+        } catch (IOException e) {
+            serverLog.warn("Failed to update Checkmarx trend index of " + run + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onDeleted(Run<?, ?> run) {
+        if (run.getAction(CxScanResult.class) == null) {
+            return;
+        }
+        try {
+            CxTrendIndex index = CxTrendIndex.forJob(run.getParent());
+            index.remove(run.getNumber());
+            CxTrendChartCache.getInstance().invalidate(run.getParent());
+            CxSecurityDashboard.getInstance().update(run.getParent(), index.read(), null);
+        } catch (IOException e) {
+            serverLog.warn("Failed to update Checkmarx trend index of " + run + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.exception.CxClientException;
+import com.cx.restclient.httpClient.CxHttpClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small client for the CxSAST REST API calls that are needed to follow a scan after it was submitted:
+ * scan status, result statistics and cancellation.
+ * <p>
+ * Unlike {@link com.cx.restclient.CxShragaClient}, this client is not bound to a project or a scan configuration,
+ * so a single logged-in instance can serve all the scans that run on the same server with the same credentials.
+ * Login, tokens and connections are handled by the {@link CxHttpClient} of the Checkmarx client library.
+ */
+class CxSastStatusClient implements Closeable {
+
+    private static final String REST_API_PATH = "/CxRestAPI/";
+    private static final String SCAN_PATH = "sast/scans/%d";
+    private static final String STATISTICS_PATH = "sast/scans/%d/resultsStatistics";
+    private static final String QUEUE_PATH = "sast/scansQueue";
+    private static final String QUEUE_SCAN_PATH = "sast/scansQueue/%d";
+
+    private static final String ORIGIN = "Jenkins";
+    private static final String API_VERSION_CONTENT_TYPE = "application/json;v=1.0";
+
+    // CxSAST access tokens are valid for one hour by default, see CxSessionPool.
+    private static final long TOKEN_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(CxSessionPool.class.getName() + ".tokenLifetimeMinutes", 60));
+    private static final long TOKEN_REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    static final String STATUS_FINISHED = "Finished";
+    static final String STATUS_FAILED = "Failed";
+    static final String STATUS_CANCELED = "Canceled";
+    static final String STATUS_DELETED = "Deleted";
+
+    private final String serverUrl;
+    private final String username;
+    private final String password;
+    private final CxHttpClient httpClient;
+
+    private long loggedInAt;
+
+    CxSastStatusClient(CxCredentials credentials, boolean enableCertificateValidation, Logger log) throws IOException {
+        this.serverUrl = StringUtils.removeEnd(credentials.getServerUrl().trim(), "/");
+        this.username = credentials.getUsername();
+        this.password = credentials.getPassword();
+        try {
+            this.httpClient = new CxHttpClient(serverUrl + REST_API_PATH, ORIGIN, !enableCertificateValidation, false,
+                    null, ProxyHelper.getProxyConfig(), log);
+        } catch (CxClientException e) {
+            throw new IOException("Failed to create Checkmarx client for " + serverUrl + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return status name of the scan, e.g. "Queued", "Scanning" or "Finished".
+     */
+    String getScanStatus(final long scanId) throws IOException {
+        JsonNode scan = execute(new Request<JsonNode>() {
+            @Override
+            public JsonNode execute() throws IOException, CxClientException {
+                return httpClient.getRequest(String.format(SCAN_PATH, scanId), API_VERSION_CONTENT_TYPE, JsonNode.class,
+                        HttpStatus.SC_OK, "SAST scan status", false);
+            }
+        });
+        return scan.path("status").path("name").asText();
+    }
+
+    /**
+     * Returns all the scans that are queued or running on the server in a single request.
+     * A scan that is no longer in the queue has either finished, failed or was cancelled.
+     *
+     * @return queued scans by scan id
+     */
+    Map<Long, QueuedScan> getScansQueue() throws IOException {
+        JsonNode queue = execute(new Request<JsonNode>() {
+            @Override
+            public JsonNode execute() throws IOException, CxClientException {
+                return httpClient.getRequest(QUEUE_PATH, API_VERSION_CONTENT_TYPE, JsonNode.class,
+                        HttpStatus.SC_OK, "SAST scans queue", false);
+            }
+        });
+        Map<Long, QueuedScan> result = new HashMap<>();
+        for (JsonNode entry : queue) {
+            QueuedScan scan = new QueuedScan();
+            scan.stage = entry.path("stage").path("value").asText();
+            scan.totalPercent = entry.path("totalPercent").asInt();
+            result.put(entry.path("id").asLong(), scan);
+        }
+        return result;
+    }
+
+    ScanStatistics getResultsStatistics(final long scanId) throws IOException {
+        JsonNode statistics = execute(new Request<JsonNode>() {
+            @Override
+            public JsonNode execute() throws IOException, CxClientException {
+                return httpClient.getRequest(String.format(STATISTICS_PATH, scanId), API_VERSION_CONTENT_TYPE,
+                        JsonNode.class, HttpStatus.SC_OK, "SAST scan results statistics", false);
+            }
+        });
+        ScanStatistics result = new ScanStatistics();
+        result.high = statistics.path("highSeverity").asInt();
+        result.medium = statistics.path("mediumSeverity").asInt();
+        result.low = statistics.path("lowSeverity").asInt();
+        result.info = statistics.path("infoSeverity").asInt();
+        return result;
+    }
+
+    void cancelScan(final long scanId) throws IOException {
+        execute(new Request<Void>() {
+            @Override
+            public Void execute() throws IOException, CxClientException {
+                httpClient.patchRequest(String.format(QUEUE_SCAN_PATH, scanId), API_VERSION_CONTENT_TYPE,
+                        new StringEntity("{\"status\":\"" + STATUS_CANCELED + "\"}", ContentType.APPLICATION_JSON),
+                        HttpStatus.SC_OK, "cancel SAST scan");
+                return null;
+            }
+        });
+    }
+
+    static boolean isFinalStatus(String status) {
+        return STATUS_FINISHED.equalsIgnoreCase(status) ||
+                STATUS_FAILED.equalsIgnoreCase(status) ||
+                STATUS_CANCELED.equalsIgnoreCase(status) ||
+                STATUS_DELETED.equalsIgnoreCase(status);
+    }
+
+    String getServerUrl() {
+        return serverUrl;
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+
+    /**
+     * Logs in when the token is about to expire, and once more if the request fails, e.g. because the token was
+     * revoked on the server side.
+     */
+    private synchronized <T> T execute(Request<T> request) throws IOException {
+        try {
+            if (System.currentTimeMillis() - loggedInAt > TOKEN_LIFETIME_MILLIS - TOKEN_REFRESH_MARGIN_MILLIS) {
+                login();
+            }
+            try {
+                return request.execute();
+            } catch (CxClientException e) {
+                login();
+                return request.execute();
+            }
+        } catch (CxClientException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void login() throws IOException, CxClientException {
+        loggedInAt = 0;
+        httpClient.login(username, password);
+        loggedInAt = System.currentTimeMillis();
+    }
+
+    private interface Request<T> {
+        T execute() throws IOException, CxClientException;
+    }
+
+    /**
+     * State of a scan in the server queue.
+     */
+    static class QueuedScan {
+        String stage;
+        int totalPercent;
+    }
+
+    /**
+     * Vulnerability counts of a finished scan.
+     */
+    static class ScanStatistics {
+        int high;
+        int medium;
+        int low;
+        int info;
+    }
+}
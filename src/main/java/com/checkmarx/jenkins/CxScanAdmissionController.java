@@ -0,0 +1,249 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of builds that scan against the same Checkmarx server at the same time.
+ * <p>
+ * Builds over the limit wait in a queue per server. The queue is ordered by priority first (see
+ * {@link #PRIORITY_VARIABLE}, lower values go first). Within the same priority, builds of different jobs take turns,
+ * so that a job that triggered many builds does not delay every other job. Builds of the same job keep their
+ * arrival order.
+ */
+public class CxScanAdmissionController {
+
+    /**
+     * Build environment variable that sets the priority of the build in the scan queue.
+     */
+    static final String PRIORITY_VARIABLE = "CX_SCAN_PRIORITY";
+    static final int DEFAULT_PRIORITY = 100;
+
+    private static final CxScanAdmissionController INSTANCE = new CxScanAdmissionController();
+
+    private final ConcurrentMap<String, ServerQueue> queues = new ConcurrentHashMap<>();
+
+    private CxScanAdmissionController() {
+    }
+
+    static CxScanAdmissionController getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits until the build may start scanning against the given server. The caller must close the returned permit
+     * when the scan is done.
+     *
+     * @param maxConcurrentScans limit for the server, 0 or less for no limit
+     */
+    Permit acquire(String serverUrl, String jobName, int priority, int maxConcurrentScans, Logger log)
+            throws InterruptedException {
+        ServerQueue queue = getQueue(serverUrl);
+        return queue.acquire(jobName, priority, maxConcurrentScans, log);
+    }
+
+    /**
+     * @return the state of every server that has been scanned against since the controller started
+     */
+    List<ServerQueue> getServerQueues() {
+        List<ServerQueue> result = new ArrayList<>(queues.values());
+        Collections.sort(result, new Comparator<ServerQueue>() {
+            @Override
+            public int compare(ServerQueue first, ServerQueue second) {
+                return first.serverUrl.compareTo(second.serverUrl);
+            }
+        });
+        return result;
+    }
+
+    private ServerQueue getQueue(String serverUrl) {
+        String key = StringUtils.removeEnd(StringUtils.trimToEmpty(serverUrl), "/").toLowerCase();
+        ServerQueue queue = queues.get(key);
+        if (queue == null) {
+            ServerQueue created = new ServerQueue(key);
+            queue = queues.putIfAbsent(key, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Admission state of one Checkmarx server.
+     */
+    public static class ServerQueue {
+        private final String serverUrl;
+        private final PriorityQueue<Waiter> waiting = new PriorityQueue<>();
+        // Number of waiting builds of each job, used to interleave jobs.
+        private final Map<String, Long> jobTurns = new HashMap<>();
+        private long arrivals;
+        private int active;
+        private long admitted;
+        private long queued;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+
+        private ServerQueue(String serverUrl) {
+            this.serverUrl = serverUrl;
+        }
+
+        private synchronized Permit acquire(String jobName, int priority, int maxConcurrentScans, Logger log)
+                throws InterruptedException {
+            long start = System.currentTimeMillis();
+            if (maxConcurrentScans <= 0 || (active < maxConcurrentScans && waiting.isEmpty())) {
+                return admit(0);
+            }
+
+            Waiter waiter = new Waiter(priority, nextTurn(jobName), arrivals++);
+            waiting.add(waiter);
+            queued++;
+            log.info(String.format("%d scans are running against %s (limit %d). Waiting in queue at position %d.",
+                    active, serverUrl, maxConcurrentScans, waiting.size()));
+            try {
+                while (waiting.peek() != waiter || active >= maxConcurrentScans) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                waiting.remove(waiter);
+                notifyAll();
+                throw e;
+            } finally {
+                releaseTurn(jobName);
+            }
+            waiting.remove();
+            // The next waiter may fit as well, e.g. when the limit was raised.
+            notifyAll();
+
+            long waitMillis = System.currentTimeMillis() - start;
+            log.info("Waited " + TimeUnit.MILLISECONDS.toSeconds(waitMillis) + " seconds for a free scan slot.");
+            return admit(waitMillis);
+        }
+
+        private Permit admit(long waitMillis) {
+            active++;
+            admitted++;
+            totalWaitMillis += waitMillis;
+            maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+            return new Permit(this);
+        }
+
+        /**
+         * @return how many builds of the job are already waiting, so that the n-th waiting build of every job
+         * is admitted before the (n+1)-th build of any job with the same priority
+         */
+        private long nextTurn(String jobName) {
+            Long waitingBuilds = jobTurns.get(jobName);
+            long turn = waitingBuilds == null ? 0 : waitingBuilds;
+            jobTurns.put(jobName, turn + 1);
+            return turn;
+        }
+
+        private void releaseTurn(String jobName) {
+            Long waitingBuilds = jobTurns.get(jobName);
+            if (waitingBuilds == null || waitingBuilds <= 1) {
+                jobTurns.remove(jobName);
+            } else {
+                jobTurns.put(jobName, waitingBuilds - 1);
+            }
+        }
+
+        private synchronized void release() {
+            active--;
+            notifyAll();
+        }
+
+        public String getServerUrl() {
+            return serverUrl;
+        }
+
+        public synchronized int getActive() {
+            return active;
+        }
+
+        public synchronized int getQueueDepth() {
+            return waiting.size();
+        }
+
+        public synchronized long getAdmitted() {
+            return admitted;
+        }
+
+        public synchronized long getQueued() {
+            return queued;
+        }
+
+        public synchronized long getAverageWaitSeconds() {
+            return admitted == 0 ? 0 : TimeUnit.MILLISECONDS.toSeconds(totalWaitMillis / admitted);
+        }
+
+        public synchronized long getMaxWaitSeconds() {
+            return TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis);
+        }
+
+        public synchronized long getOldestWaitSeconds() {
+            long oldest = 0;
+            long now = System.currentTimeMillis();
+            for (Waiter waiter : waiting) {
+                oldest = Math.max(oldest, now - waiter.since);
+            }
+            return TimeUnit.MILLISECONDS.toSeconds(oldest);
+        }
+    }
+
+    private static class Waiter implements Comparable<Waiter> {
+        private final int priority;
+        private final long jobTurn;
+        private final long arrival;
+        private final long since = System.currentTimeMillis();
+
+        private Waiter(int priority, long jobTurn, long arrival) {
+            this.priority = priority;
+            this.jobTurn = jobTurn;
+            this.arrival = arrival;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            if (jobTurn != other.jobTurn) {
+                return jobTurn < other.jobTurn ? -1 : 1;
+            }
+            return arrival < other.arrival ? -1 : (arrival == other.arrival ? 0 : 1);
+        }
+    }
+
+    /**
+     * A running scan slot, returned to the server queue when closed.
+     */
+    static class Permit implements Closeable {
+        private final ServerQueue queue;
+        private boolean released;
+
+        private Permit(ServerQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                queue.release();
+            }
+        }
+    }
+}
@@ -6,10 +6,8 @@ import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 import com.cx.restclient.CxShragaClient;
-import com.cx.restclient.common.summary.SummaryUtils;
 import com.cx.restclient.configuration.CxScanConfig;
 import com.cx.restclient.dto.*;
-import com.cx.restclient.dto.scansummary.ScanSummary;
 import com.cx.restclient.exception.CxClientException;
 import com.cx.restclient.osa.dto.OSAResults;
 import com.cx.restclient.sast.dto.CxNameObj;
@@ -17,8 +15,6 @@ import com.cx.restclient.sast.dto.Preset;
 import com.cx.restclient.sast.dto.Project;
 import com.cx.restclient.sast.dto.SASTResults;
 import com.cx.restclient.sca.dto.SCAConfig;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import freemarker.template.TemplateException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
@@ -32,7 +28,6 @@ import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.jetbrains.annotations.NotNull;
@@ -41,14 +36,19 @@ import org.kohsuke.stapler.*;
 
 import javax.annotation.Nonnull;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -162,6 +162,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     private Result resolvedVulnerabilityThresholdResult;
     private boolean avoidDuplicateProjectScans;
     private Boolean generateXmlReport = true;
+    private boolean concurrentScans;
+    private boolean controllerSideWait;
+    private boolean skipUnchangedScans;
+    private boolean transferReportsAsFiles;
 
     public static final int MINIMUM_TIMEOUT_IN_MINUTES = 1;
     public static final String REPORTS_FOLDER = "Checkmarx/Reports";
@@ -486,6 +490,22 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return generateXmlReport;
     }
 
+    public boolean isConcurrentScans() {
+        return concurrentScans;
+    }
+
+    public boolean isControllerSideWait() {
+        return controllerSideWait;
+    }
+
+    public boolean isSkipUnchangedScans() {
+        return skipUnchangedScans;
+    }
+
+    public boolean isTransferReportsAsFiles() {
+        return transferReportsAsFiles;
+    }
+
     @DataBoundSetter
     public void setThresholdSettings(String thresholdSettings) {
         this.thresholdSettings = thresholdSettings;
@@ -639,6 +659,26 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         this.generateXmlReport = generateXmlReport;
     }
 
+    @DataBoundSetter
+    public void setConcurrentScans(boolean concurrentScans) {
+        this.concurrentScans = concurrentScans;
+    }
+
+    @DataBoundSetter
+    public void setControllerSideWait(boolean controllerSideWait) {
+        this.controllerSideWait = controllerSideWait;
+    }
+
+    @DataBoundSetter
+    public void setTransferReportsAsFiles(boolean transferReportsAsFiles) {
+        this.transferReportsAsFiles = transferReportsAsFiles;
+    }
+
+    @DataBoundSetter
+    public void setSkipUnchangedScans(boolean skipUnchangedScans) {
+        this.skipUnchangedScans = skipUnchangedScans;
+    }
+
     @DataBoundSetter
     public void setProjectId(long projectId) {
         this.projectId = projectId;
@@ -692,11 +732,40 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             return;
         }
 
-        final CxScanCallable action = new CxScanCallable(config, listener);
+        if (isSkipUnchangedScansApplicable(config)) {
+            CxSourceManifest manifest = workspace.act(new CxSourceManifestCallable(
+                    config.getSastFilterPattern(), config.getSastFolderExclusions(), getScanSettingsFingerprint(config)));
+            log.info("Source manifest: " + manifest.getFileCount() + " files, digest " + manifest.getDigest());
+            manifest.save(new File(run.getRootDir(), "checkmarx"));
+            if (reusePreviousScanResult(run, workspace, manifest)) {
+                return;
+            }
+        }
 
-        //create scans and retrieve results (in jenkins agent)
-        RemoteScanInfo scanInfo = workspace.act(action);
-        ScanResults scanResults = scanInfo.getScanResults();
+        // run.getUrl() returns a URL path similar to job/MyJobName/124/
+        String pdfUrl = config.getGeneratePDFReport() ? String.format(PDF_URL_TEMPLATE, run.getUrl()) : null;
+        CxScanCallable.Options options = new CxScanCallable.Options();
+        options.setConcurrentScans(concurrentScans);
+        options.setControllerSideWait(controllerSideWait);
+        options.setTransferReportsAsFiles(transferReportsAsFiles);
+        options.setSastPdfLink(pdfUrl);
+        final CxScanCallable action = new CxScanCallable(config, listener, options);
+
+        //create scans and retrieve results (in jenkins agent), once the server has a free scan slot
+        int priority = StringUtils.isEmpty(env.get(CxScanAdmissionController.PRIORITY_VARIABLE)) ? CxScanAdmissionController.DEFAULT_PRIORITY :
+                parseInt(env.get(CxScanAdmissionController.PRIORITY_VARIABLE), log, "Invalid scan priority: [%s]. Using default priority.", CxScanAdmissionController.DEFAULT_PRIORITY);
+        RemoteScanInfo scanInfo;
+        ScanResults scanResults;
+        try (CxScanAdmissionController.Permit ignored = CxScanAdmissionController.getInstance().acquire(
+                config.getUrl(), run.getParent().getFullName(), priority, descriptor.getMaxConcurrentScansPerServerValue(), log)) {
+            scanInfo = workspace.act(action);
+            scanResults = scanInfo.getScanResults();
+
+            // The scan is still running when the agent returns without waiting, the permit is kept until it completes.
+            if (scanInfo.getPendingSastScanId() != null) {
+                waitForSASTResultsOnController(run, descriptor, config, scanInfo.getPendingSastScanId(), scanResults);
+            }
+        }
 
         // We'll need this for the HTML report.
         config.setCxARMUrl(scanInfo.getCxARMUrl());
@@ -706,47 +775,214 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         //write reports to build dir
         File checkmarxBuildDir = new File(run.getRootDir(), "checkmarx");
         checkmarxBuildDir.mkdir();
-
-        if (config.getGeneratePDFReport()) {
-            // run.getUrl() returns a URL path similar to job/MyJobName/124/
-            String pdfUrl = String.format(PDF_URL_TEMPLATE, run.getUrl());
-            scanResults.getSastResults().setSastPDFLink(pdfUrl);
+        CxWorkspaceReports workspaceReports = new CxWorkspaceReports();
+
+        // Reports that were generated on the agent only need to be copied, the agent sent a summary instead of the results.
+        boolean reportsFromAgent = scanInfo.getReportsPath() != null;
+        RemoteScanSummary summary;
+        if (reportsFromAgent) {
+            copyReportsFromWorkspace(checkmarxBuildDir, workspace);
+            summary = scanInfo.getSummary();
+        } else {
+            if (pdfUrl != null) {
+                scanResults.getSastResults().setSastPDFLink(pdfUrl);
+            }
+            summary = RemoteScanSummary.of(config, scanResults);
         }
 
         //in case of async mode, do not create reports (only the report of the latest scan)
         //and don't assert threshold vulnerabilities
 
-        failTheBuild(run, config, scanResults);
+        failTheBuild(run, summary);
         if (config.getSynchronous()) {
 
             //generate html report
-            String reportName = generateHTMLReport(workspace, checkmarxBuildDir, config, scanResults);
+            String reportName = reportsFromAgent ? getTransferredHtmlReportName(checkmarxBuildDir, config) :
+                    generateHTMLReport(workspaceReports, checkmarxBuildDir, config, scanResults);
             cxScanResult.setHtmlReportName(reportName);
             run.addAction(cxScanResult);
 
 
             //create sast reports
-            SASTResults sastResults = scanResults.getSastResults();
-            if (sastResults.isSastResultsReady()) {
-                if (config.getGenerateXmlReport() == null || config.getGenerateXmlReport()) {
-                    createSastReports(sastResults, checkmarxBuildDir, workspace);
+            if (summary.isSastResultsReady()) {
+                if (!reportsFromAgent && (config.getGenerateXmlReport() == null || config.getGenerateXmlReport())) {
+                    createSastReports(scanResults.getSastResults(), checkmarxBuildDir, workspaceReports, config);
                 }
-                addEnvVarAction(run, sastResults);
-                cxScanResult.setSastResults(sastResults);
+                addEnvVarAction(run, summary);
+                cxScanResult.setSastCounts(summary.getHigh(), summary.getMedium(), summary.getLow(), summary.getInfo());
+                cxScanResult.setScanId(summary.getSastScanId());
             }
 
             //create osa reports
-            DependencyScanResults dsResults = scanResults.getDependencyScanResults();
-            if (dsResults != null && dsResults.getOsaResults() != null && dsResults.getOsaResults().isOsaResultsReady()) {
-                createOsaReports(dsResults.getOsaResults(), checkmarxBuildDir);
+            if (!reportsFromAgent) {
+                DependencyScanResults dsResults = scanResults.getDependencyScanResults();
+                if (dsResults != null && dsResults.getOsaResults() != null && dsResults.getOsaResults().isOsaResultsReady()) {
+                    createOsaReports(dsResults.getOsaResults(), checkmarxBuildDir, config);
+                }
             }
+            cxScanResult.setDependencyScanCounts(summary);
+            workspaceReports.copyTo(workspace, log);
             return;
         }
         //Asynchronous scan - add note message and previous build reports
-        String reportName = generateHTMLReport(workspace, checkmarxBuildDir, config, scanResults);
+        String reportName = reportsFromAgent ? getTransferredHtmlReportName(checkmarxBuildDir, config) :
+                generateHTMLReport(workspaceReports, checkmarxBuildDir, config, scanResults);
         cxScanResult.setHtmlReportName(reportName);
         run.addAction(cxScanResult);
+        workspaceReports.copyTo(workspace, log);
+
+    }
+
+    /**
+     * Sources are compared only for SAST. Dependency scans look at other files and at remote package repositories,
+     * so their results may change even if the workspace did not.
+     */
+    private boolean isSkipUnchangedScansApplicable(CxScanConfig config) {
+        return skipUnchangedScans && config.getSynchronous() && config.getSastEnabled()
+                && config.getDependencyScannerType() == DependencyScannerType.NONE;
+    }
+
+    /**
+     * Settings that affect the scan or how its results are evaluated. A change in any of them requires a new scan
+     * even if the sources are the same.
+     */
+    private static String getScanSettingsFingerprint(CxScanConfig config) {
+        return StringUtils.join(new Object[]{
+                config.getUrl(), config.getProjectName(), config.getTeamPath(), config.getTeamId(), config.getPresetId(),
+                config.getEngineConfigurationId(), config.getSastFilterPattern(), config.getSastFolderExclusions(),
+                config.getGeneratePDFReport(), config.getGenerateXmlReport(), config.getEnablePolicyViolations(),
+                config.getSastThresholdsEnabled(), config.getSastHighThreshold(), config.getSastMediumThreshold(),
+                config.getSastLowThreshold(), config.getSastNewResultsThresholdEnabled(), config.getSastNewResultsThresholdSeverity()
+        }, '\n');
+    }
+
+    /**
+     * Copies the scan results of the last build that was scanned, if its sources and scan settings are identical
+     * to those of this build and it was successful.
+     *
+     * @return whether the results were reused, so that no scan is needed
+     */
+    private boolean reusePreviousScanResult(Run<?, ?> run, FilePath workspace, CxSourceManifest manifest)
+            throws IOException, InterruptedException {
+        Run<?, ?> previous = CxTrendIndex.getPreviousBuild(run);
+        if (previous == null) {
+            return false;
+        }
+
+        File previousDir = new File(previous.getRootDir(), "checkmarx");
+        if (!manifest.getDigest().equals(CxSourceManifest.readDigest(previousDir))) {
+            log.info("Sources or scan settings changed since build #" + previous.getNumber() + ".");
+            return false;
+        }
+        if (previous.getResult() == null || previous.getResult().isWorseThan(Result.SUCCESS)) {
+            log.info("Sources did not change since build #" + previous.getNumber() + ", but it was not successful.");
+            return false;
+        }
+
+        File checkmarxBuildDir = new File(run.getRootDir(), "checkmarx");
+        File[] reports = previousDir.listFiles();
+        if (reports != null) {
+            for (File report : reports) {
+                if (report.isFile() && !CxSourceManifest.FILE_NAME.equals(report.getName())) {
+                    FileUtils.copyFileToDirectory(report, checkmarxBuildDir);
+                }
+            }
+        }
+
+        CxScanResult cxScanResult = new CxScanResult(run, previous.getAction(CxScanResult.class));
+        CxWorkspaceReports workspaceReports = new CxWorkspaceReports();
+        if (cxScanResult.getHtmlReportName() != null) {
+            workspaceReports.add(new File(checkmarxBuildDir, cxScanResult.getHtmlReportName()));
+        }
+        workspaceReports.add(new File(checkmarxBuildDir, SCAN_REPORT_XML));
+        workspaceReports.copyTo(workspace, log);
+        run.addAction(cxScanResult);
+
+        EnvVarAction envVarAction = new EnvVarAction();
+        envVarAction.setCxSastResults(cxScanResult);
+        run.addAction(envVarAction);
+
+        log.info("No scannable changes since build #" + cxScanResult.getReusedFromBuild() + ". Reusing its Checkmarx scan results.");
+        return true;
+    }
+
+    /**
+     * Waits for a SAST scan that was submitted by the agent, using the shared {@link CxScanWaitScheduler}
+     * instead of polling from the agent, then retrieves its results from the controller.
+     */
+    private void waitForSASTResultsOnController(Run<?, ?> run, DescriptorImpl descriptor, CxScanConfig config,
+                                                long scanId, ScanResults scanResults) throws InterruptedException, IOException {
+        log.info("Waiting for SAST scan " + scanId + " to finish.");
+        CxScanWaitScheduler scheduler = CxScanWaitScheduler.get();
+        CxCredentials credentials = CxCredentials.resolveCred(this, descriptor, run);
+        CompletableFuture<String> scanStatus = scheduler.waitFor(run, config, credentials, descriptor.isEnableCertificateValidation(), scanId);
+
+        String status;
+        try {
+            Integer timeout = config.getSastScanTimeoutInMinutes();
+            status = timeout != null && timeout > 0 ? scanStatus.get(timeout, TimeUnit.MINUTES) : scanStatus.get();
+        } catch (InterruptedException e) {
+            log.info("Build was interrupted, cancelling SAST scan " + scanId + ".");
+            scheduler.cancel(run, true);
+            throw e;
+        } catch (TimeoutException e) {
+            log.error("SAST scan " + scanId + " did not finish within " + config.getSastScanTimeoutInMinutes() + " minutes, cancelling it.");
+            scheduler.cancel(run, true);
+            scanResults.setSastWaitException(new CxClientException("SAST scan timed out"));
+            return;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("Failed to wait for SAST scan results: " + cause.getMessage());
+            scanResults.setSastWaitException(new CxClientException(cause.getMessage()));
+            return;
+        }
+
+        if (!CxSastStatusClient.STATUS_FINISHED.equalsIgnoreCase(status)) {
+            log.error("SAST scan " + scanId + " ended with status: " + status);
+            scanResults.setSastWaitException(new CxClientException("SAST scan ended with status: " + status));
+            return;
+        }
+
+        CxSessionPool.Session session = null;
+        try {
+            session = CommonClientFactory.getScanSession(config, log);
+            SASTResults sastResults = session.getClient().getLatestSASTResults();
+            checkScanResults(scanId, sastResults, scheduler.getStatusClient(credentials,
+                    descriptor.isEnableCertificateValidation()).getResultsStatistics(scanId));
+            scanResults.setSastResults(sastResults);
+            if (config.getEnablePolicyViolations()) {
+                session.getClient().printIsProjectViolated();
+            }
+        } catch (Exception e) {
+            log.error("Failed to get SAST scan results: " + e.getMessage());
+            scanResults.setSastWaitException(e);
+            if (session != null) {
+                session.markFailed();
+            }
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
 
+    /**
+     * The client library only retrieves the results and reports of the latest scan of the project, which belong to
+     * another scan if one finished since the awaited scan did.
+     *
+     * @throws CxClientException if the results are not those of the awaited scan
+     */
+    private static void checkScanResults(long scanId, SASTResults results,
+                                         CxSastStatusClient.ScanStatistics statistics) throws CxClientException {
+        if (results.getScanId() != scanId) {
+            throw new CxClientException("The latest results of the project are those of SAST scan " + results.getScanId()
+                    + ", which finished after SAST scan " + scanId + ". Run the build again to get consistent results.");
+        }
+        if (results.getHigh() != statistics.high || results.getMedium() != statistics.medium
+                || results.getLow() != statistics.low || results.getInformation() != statistics.info) {
+            throw new CxClientException("The results retrieved for SAST scan " + scanId
+                    + " do not match its result statistics on the server.");
+        }
     }
 
     private CxScanConfig resolveConfiguration(Run<?, ?> run, DescriptorImpl descriptor, EnvVars env, CxLoggerAdapter log) {
@@ -907,6 +1143,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         log.info("avoid duplicated projects scans: " + config.isAvoidDuplicateProjectScans());
         log.info("enable Project Policy Enforcement: " + config.getEnablePolicyViolations());
         log.info("Dependency scanner type: " + config.getDependencyScannerType());
+        log.info("run scans concurrently: " + concurrentScans);
+        log.info("wait for SAST results on controller: " + controllerSideWait);
+        log.info("skip unchanged scans: " + skipUnchangedScans);
+        log.info("transfer reports as files: " + transferReportsAsFiles);
         if (config.getSastEnabled()) {
             log.info("preset id: " + config.getPresetId());
             log.info("SAST folder exclusions: " + config.getSastFolderExclusions());
@@ -956,11 +1196,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         log.info("------------------------------------------------------------------------------------------");
     }
 
-    private void createSastReports(SASTResults sastResults, File checkmarxBuildDir, @Nonnull FilePath workspace) {
+    private void createSastReports(SASTResults sastResults, File checkmarxBuildDir, CxWorkspaceReports workspaceReports,
+                                   CxScanConfig config) {
         File xmlReportFile = new File(checkmarxBuildDir, SCAN_REPORT_XML);
         try {
-            FileUtils.writeByteArrayToFile(xmlReportFile, sastResults.getRawXMLReport());
-            writeFileToWorkspaceReports(workspace, xmlReportFile);
+            CxReportStorage.write(xmlReportFile, sastResults.getRawXMLReport());
+            workspaceReports.add(xmlReportFile);
+            new CxReportGenerator(config, log).writeFindingsIndex(checkmarxBuildDir);
         } catch (IOException e) {
             log.warn("Failed to write SAST XML report to workspace: " + e.getMessage());
         }
@@ -968,55 +1210,62 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         if (sastResults.getPDFReport() != null) {
             File pdfReportFile = new File(checkmarxBuildDir, CxScanResult.PDF_REPORT_NAME);
             try {
-                FileUtils.writeByteArrayToFile(pdfReportFile, sastResults.getPDFReport());
+                CxReportStorage.write(pdfReportFile, sastResults.getPDFReport());
             } catch (IOException e) {
                 log.warn("Failed to write SAST PDF report to workspace: " + e.getMessage());
             }
         }
     }
 
-    private void createOsaReports(OSAResults osaResults, File checkmarxBuildDir) {
-        writeJsonObjectToFile(osaResults.getResults(), new File(checkmarxBuildDir, OSA_SUMMERY_JSON), "OSA summery json report");
-        writeJsonObjectToFile(osaResults.getOsaLibraries(), new File(checkmarxBuildDir, OSA_LIBRARIES_JSON), "OSA libraries json report");
-        writeJsonObjectToFile(osaResults.getOsaVulnerabilities(), new File(checkmarxBuildDir, OSA_VULNERABILITIES_JSON), "OSA vulnerabilities json report");
-    }
-
-    private String generateHTMLReport(@Nonnull FilePath workspace, File checkmarxBuildDir, CxScanConfig config, ScanResults results) {
-        String reportName = null;
+    /**
+     * Copies the reports that the agent generated (see {@link #isTransferReportsAsFiles()}) into the build directory,
+     * in a single streamed transfer, and removes them from the workspace.
+     */
+    private void copyReportsFromWorkspace(File checkmarxBuildDir, @Nonnull FilePath workspace)
+            throws InterruptedException {
+        FilePath reports = workspace.child(CxReportGenerator.TRANSFER_FOLDER);
         try {
-            String reportHTML = SummaryUtils.generateSummary(results.getSastResults(), results.getDependencyScanResults(), config);
-            reportName = CxScanResult.resolveHTMLReportName(config.getSastEnabled(), config.getDependencyScannerType());
-            File reportFile = new File(checkmarxBuildDir, reportName);
-            FileUtils.writeStringToFile(reportFile, reportHTML, Charset.defaultCharset());
-            writeFileToWorkspaceReports(workspace, reportFile);
-        } catch (IOException | TemplateException e) {
-            log.error("Failed to generate HTML report.", e);
+            int count = reports.copyRecursiveTo(new FilePath(checkmarxBuildDir));
+            log.info("Copied " + count + " report files from the agent.");
+            reports.deleteRecursive();
+        } catch (IOException e) {
+            log.warn("Failed to copy reports from workspace: " + e.getMessage());
         }
-        return reportName;
     }
 
-    private void writeJsonObjectToFile(Object jsonObj, File to, String description) {
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            String json = null;
-            json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObj);
-            FileUtils.writeStringToFile(to, json);
-            //log.info(description + " file generated successfully. location: [" + to.getAbsolutePath() + "]");
-            log.info("Copying file [" + to.getName() + "] to workspace [" + to.getAbsolutePath() + "]");
-        } catch (Exception e) {
-            log.error("Failed to write " + description + " to [" + to.getAbsolutePath() + "]");
+    private void createOsaReports(OSAResults osaResults, File checkmarxBuildDir, CxScanConfig config) throws InterruptedException {
+        new CxReportGenerator(config, log).writeOsaReports(osaResults, checkmarxBuildDir);
+    }
+
+    /**
+     * The name is not taken from the agent, the report is only looked up under the name the controller expects, and
+     * links copied from the agent are not followed.
+     *
+     * @return the name of the HTML report that was copied from the agent, or null if the agent did not render it
+     */
+    private static String getTransferredHtmlReportName(File checkmarxBuildDir, CxScanConfig config) {
+        String reportName = CxScanResult.resolveHTMLReportName(config.getSastEnabled(), config.getDependencyScannerType());
+        Path report = new File(checkmarxBuildDir, reportName).toPath();
+        return Files.isRegularFile(report, LinkOption.NOFOLLOW_LINKS) ? reportName : null;
+    }
 
+    private String generateHTMLReport(CxWorkspaceReports workspaceReports, File checkmarxBuildDir, CxScanConfig config, ScanResults results) {
+        try {
+            File reportFile = new CxReportGenerator(config, log).writeHtmlReport(results, checkmarxBuildDir);
+            if (reportFile != null) {
+                workspaceReports.add(reportFile);
+                return reportFile.getName();
+            }
+        } catch (IOException e) {
+            log.error("Failed to generate HTML report.", e);
         }
+        return null;
     }
 
-    private void failTheBuild(Run<?, ?> run, CxScanConfig config, ScanResults ret) {
+    private void failTheBuild(Run<?, ?> run, RemoteScanSummary summary) {
         //assert if expected exception is thrown  OR when vulnerabilities under threshold OR when policy violated
-        ScanSummary scanSummary = new ScanSummary(config, ret);
-        if (scanSummary.hasErrors() ||
-                ret.getSastCreateException() != null || ret.getSastWaitException() != null ||
-                ret.getOsaCreateException() != null || ret.getOsaWaitException() != null ||
-                ret.getGeneralException() != null) {
-            printBuildFailure(scanSummary.toString(), ret, log);
+        if (summary.hasErrors()) {
+            printBuildFailure(summary, log);
             if (resolvedVulnerabilityThresholdResult != null) {
                 run.setResult(resolvedVulnerabilityThresholdResult);
             }
@@ -1030,17 +1279,18 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     }
 
 
-    private void printBuildFailure(String thDescription, ScanResults ret, CxLoggerAdapter log) {
+    private void printBuildFailure(RemoteScanSummary summary, CxLoggerAdapter log) {
         log.error("********************************************");
         log.error(" The Build Failed for the Following Reasons: ");
         log.error("********************************************");
 
-        logError(ret.getGeneralException());
-        logError(ret.getSastCreateException());
-        logError(ret.getSastWaitException());
-        logError(ret.getOsaCreateException());
-        logError(ret.getOsaWaitException());
+        logError(summary.getGeneralException());
+        logError(summary.getSastCreateException());
+        logError(summary.getSastWaitException());
+        logError(summary.getOsaCreateException());
+        logError(summary.getOsaWaitException());
 
+        String thDescription = summary.getThresholdDescription();
         if (thDescription != null) {
             String[] lines = thDescription.split("\\n");
             for (String s : lines) {
@@ -1059,12 +1309,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     }
 
 
-    private void addEnvVarAction(Run<?, ?> run, SASTResults sastResults) {
+    private void addEnvVarAction(Run<?, ?> run, RemoteScanSummary summary) {
         EnvVarAction envVarAction = new EnvVarAction();
-        envVarAction.setCxSastResults(sastResults.getHigh(),
-                sastResults.getMedium(),
-                sastResults.getLow(),
-                sastResults.getInformation());
+        envVarAction.setCxSastResults(summary.getHigh(),
+                summary.getMedium(),
+                summary.getLow(),
+                summary.getInfo());
         run.addAction(envVarAction);
     }
 
@@ -1078,27 +1328,6 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return ret;
     }
 
-    private void writeFileToWorkspaceReports(FilePath workspace, File file) {
-
-        String remoteDirPath = workspace.getRemote() + "/" + REPORTS_FOLDER;
-        FileInputStream fis = null;
-
-        try {
-            String remoteFilePath = remoteDirPath + "/" + file.getName();
-            log.info("Copying file [" + file.getName() + "] to workspace [" + remoteFilePath + "]");
-            FilePath remoteFile = new FilePath(workspace.getChannel(), remoteFilePath);
-            fis = new FileInputStream(file);
-            remoteFile.copyFrom(fis);
-
-        } catch (Exception e) {
-            log.warn("Failed to write file [" + file.getName() + "] to workspace: " + e.getMessage());
-
-        } finally {
-            IOUtils.closeQuietly(fis);
-        }
-
-    }
-
     private boolean shouldUseGlobalThreshold() {
         final DescriptorImpl descriptor = getDescriptor();
         //locked by global or (job threshold enabled and points to 'global' and global is enabled)
@@ -1199,6 +1428,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         public static final String DEFAULT_SCA_WEB_APP_URL = CxConfig.getDefaultScaWebAppUrl();
         public static final int FULL_SCAN_CYCLE_MIN = 1;
         public static final int FULL_SCAN_CYCLE_MAX = 99;
+        public static final int DEFAULT_TREND_WINDOW_BUILDS = 100;
 
         //////////////////////////////////////////////////////////////////////////////////////
         //  Persistent plugin global configuration parameters
@@ -1239,6 +1469,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         private JobGlobalStatusOnError jobGlobalStatusOnThresholdViolation = JobGlobalStatusOnError.FAILURE;
         private boolean scanTimeOutEnabled;
         private Integer scanTimeoutDuration; // In minutes.
+        @Nullable
+        private Integer maxConcurrentScansPerServer;
+        @Nullable
+        private Integer trendWindowBuilds;
+        @Nullable
+        private Integer trendWindowDays;
         private boolean lockVulnerabilitySettings = true;
 
         private final transient Pattern msGuid = Pattern.compile("^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
@@ -1427,6 +1663,66 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             return timeoutValid(value);
         }
 
+        @Nullable
+        public Integer getMaxConcurrentScansPerServer() {
+            return maxConcurrentScansPerServer;
+        }
+
+        public void setMaxConcurrentScansPerServer(@Nullable Integer maxConcurrentScansPerServer) {
+            this.maxConcurrentScansPerServer = maxConcurrentScansPerServer;
+        }
+
+        /**
+         * @return the limit of concurrent scans per Checkmarx server, 0 for no limit
+         */
+        int getMaxConcurrentScansPerServerValue() {
+            return maxConcurrentScansPerServer == null ? 0 : Math.max(0, maxConcurrentScansPerServer);
+        }
+
+        public FormValidation doCheckMaxConcurrentScansPerServer(@QueryParameter final Integer value) {
+            return checkNonNegativeValue(value);
+        }
+
+        @Nullable
+        public Integer getTrendWindowBuilds() {
+            return trendWindowBuilds;
+        }
+
+        public void setTrendWindowBuilds(@Nullable Integer trendWindowBuilds) {
+            this.trendWindowBuilds = trendWindowBuilds;
+        }
+
+        /**
+         * @return number of most recent builds shown one by one in the trend graph, 0 for all
+         */
+        int getTrendWindowBuildsValue() {
+            return trendWindowBuilds == null ? DEFAULT_TREND_WINDOW_BUILDS : Math.max(0, trendWindowBuilds);
+        }
+
+        public FormValidation doCheckTrendWindowBuilds(@QueryParameter final Integer value) {
+            return checkNonNegativeValue(value);
+        }
+
+        @Nullable
+        public Integer getTrendWindowDays() {
+            return trendWindowDays;
+        }
+
+        public void setTrendWindowDays(@Nullable Integer trendWindowDays) {
+            this.trendWindowDays = trendWindowDays;
+        }
+
+        /**
+         * @return number of most recent days whose builds are shown one by one in the trend graph, 0 for no limit
+         */
+        int getTrendWindowDaysValue() {
+            return trendWindowDays == null ? 0 : Math.max(0, trendWindowDays);
+        }
+
+        public FormValidation doCheckTrendWindowDays(@QueryParameter final Integer value) {
+            return checkNonNegativeValue(value);
+        }
+
         @Override
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             return true;
@@ -1535,16 +1831,14 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
             return FormValidation.error(e.getMessage());
         }
 
-        // Prepares a cx client object to be connected and logged in
+        // Provides a connected and logged in cx client object, reused across requests with the same credentials
         /*
          *  Note: This method is called concurrently by multiple threads, refrain from using mutable
          *  shared state to avoid synchronization issues.
          */
-        private CxShragaClient prepareLoggedInClient(CxCredentials credentials)
+        private CxSessionPool.Session prepareLoggedInClient(CxCredentials credentials)
                 throws IOException, CxClientException {
-            CxShragaClient ret = CommonClientFactory.getInstance(credentials, this.isEnableCertificateValidation(), serverLog);
-            ret.login();
-            return ret;
+            return CommonClientFactory.getSession(credentials, this.isEnableCertificateValidation(), serverLog);
         }
 
         /*
@@ -1555,11 +1849,11 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                     @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ComboBoxModel projectNames = new ComboBoxModel();
-            CxShragaClient shragaClient = null;
+            CxSessionPool.Session session = null;
             try {
                 CxCredentials credentials = CxCredentials.resolveCred(!useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password), credentialsId, this, item);
-                shragaClient = prepareLoggedInClient(credentials);
-                List<Project> projects = shragaClient.getAllProjects();
+                session = prepareLoggedInClient(credentials);
+                List<Project> projects = session.getClient().getAllProjects();
 
                 for (Project p : projects) {
                     projectNames.add(p.getName());
@@ -1568,10 +1862,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 return projectNames;
             } catch (Exception e) {
                 serverLog.error("Failed to populate project list: " + e.toString(), e);
+                if (session != null) {
+                    session.markFailed();
+                }
                 return projectNames; // Return empty list of project names
             } finally {
-                if (shragaClient != null) {
-                    shragaClient.close();
+                if (session != null) {
+                    session.close();
                 }
             }
         }
@@ -1594,12 +1891,13 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                               @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
+            CxSessionPool.Session session = null;
             try {
                 CxCredentials credentials = CxCredentials.resolveCred(!useOwnServerCredentials, serverUrl, username, StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, this, item);
-                CxShragaClient shragaClient = prepareLoggedInClient(credentials);
+                session = prepareLoggedInClient(credentials);
 
                 //todo import preset
-                List<Preset> presets = shragaClient.getPresetList();
+                List<Preset> presets = session.getClient().getPresetList();
 
                 for (Preset p : presets) {
                     listBoxModel.add(new ListBoxModel.Option(p.getName(), Integer.toString(p.getId())));
@@ -1608,9 +1906,16 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
             } catch (Exception e) {
                 serverLog.error("Failed to populate preset list: " + e.toString());
+                if (session != null) {
+                    session.markFailed();
+                }
                 String message = "Provide Checkmarx server credentials to see presets list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
                 return listBoxModel;
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
             }
         }
 
@@ -1636,12 +1941,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                       @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
-            CxShragaClient shragaClient = null;
+            CxSessionPool.Session session = null;
             try {
                 CxCredentials credentials = CxCredentials.resolveCred(!useOwnServerCredentials, serverUrl, username, StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, this, item);
 
-                shragaClient = prepareLoggedInClient(credentials);
-                List<CxNameObj> configurationList = shragaClient.getConfigurationSetList();
+                session = prepareLoggedInClient(credentials);
+                List<CxNameObj> configurationList = session.getClient().getConfigurationSetList();
 
                 for (CxNameObj cs : configurationList) {
                     listBoxModel.add(new ListBoxModel.Option(cs.getName(), Long.toString(cs.getId())));
@@ -1649,11 +1954,14 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
             } catch (Exception e) {
                 serverLog.error("Failed to populate source encodings list: " + e.getMessage());
+                if (session != null) {
+                    session.markFailed();
+                }
                 String message = "Provide Checkmarx server credentials to see source encodings list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
             } finally {
-                if (shragaClient != null) {
-                    shragaClient.close();
+                if (session != null) {
+                    session.close();
                 }
             }
 
@@ -1671,11 +1979,11 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
-            CxShragaClient shragaClient = null;
+            CxSessionPool.Session session = null;
             try {
                 CxCredentials credentials = CxCredentials.resolveCred(!useOwnServerCredentials, serverUrl, username, StringEscapeUtils.escapeHtml4(getPasswordPlainText(password)), credentialsId, this, item);
-                shragaClient = prepareLoggedInClient(credentials);
-                List<Team> teamList = shragaClient.getTeamList();
+                session = prepareLoggedInClient(credentials);
+                List<Team> teamList = session.getClient().getTeamList();
                 for (Team team : teamList) {
                     listBoxModel.add(new ListBoxModel.Option(team.getFullName(), team.getId()));
                 }
@@ -1684,12 +1992,15 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
             } catch (Exception e) {
                 serverLog.error("Failed to populate team list: " + e.toString());
+                if (session != null) {
+                    session.markFailed();
+                }
                 String message = "Provide Checkmarx server credentials to see teams list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
                 return listBoxModel;
             } finally {
-                if (shragaClient != null) {
-                    shragaClient.close();
+                if (session != null) {
+                    session.close();
                 }
             }
 
@@ -1889,6 +2200,8 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
             req.bindJSON(this, pluginData);
             save();
+            // Server settings may have changed, don't keep sessions that were opened with the old ones.
+            CxSessionPool.getInstance().clear();
             return super.configure(req, formData);
         }
 
@@ -9,36 +9,40 @@ import com.cx.restclient.exception.CxClientException;
 import com.cx.restclient.osa.dto.OSAResults;
 import com.cx.restclient.sast.dto.SASTResults;
 import hudson.FilePath;
-import hudson.ProxyConfiguration;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import org.jenkinsci.remoting.RoleChecker;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.Serializable;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.logging.StreamHandler;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final CxScanConfig config;
+    // Replaced by the configuration of the pooled session, see invoke().
+    private CxScanConfig config;
     private final TaskListener listener;
-    private ProxyConfiguration jenkinsProxy = null;
+    private final Options options;
+    private transient volatile Long sastScanId;
 
-    public CxScanCallable(CxScanConfig config, TaskListener listener) {
-        this.config = config;
-        this.listener = listener;
-    }
+    private static final long CANCEL_TIMEOUT_SECONDS = 30;
 
-    public CxScanCallable(CxScanConfig config, TaskListener listener, ProxyConfiguration jenkinsProxy) {
+    public CxScanCallable(CxScanConfig config, TaskListener listener, Options options) {
         this.config = config;
         this.listener = listener;
-        this.jenkinsProxy = jenkinsProxy;
+        this.options = options;
     }
 
     @Override
@@ -55,13 +59,10 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
         scanResults.setDependencyScanResults(new DependencyScanResults());
         result.setScanResults(scanResults);
 
-        boolean sastCreated = false;
-        boolean dependencyScanCreated = false;
-
-        CxShragaClient shraga = null;
+        CxSessionPool.Session session;
         try {
-            shraga = CommonClientFactory.getInstance(config, log);
-            shraga.init();
+            session = CommonClientFactory.getScanSession(config, log);
+            config = session.getConfig();
 
             // Make sure CxARMUrl is passed in the result.
             // Cannot pass CxARMUrl in the config object, because this callable can be executed on a Jenkins agent.
@@ -74,13 +75,7 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
             // Can actually be null e.g. for NullPointerException.
             if (message != null) {
                 if (message.contains("Server is unavailable")) {
-                    if (shraga != null) {
-                        try {
-                            shraga.login();
-                        } catch (CxClientException e) {
-                            throw new IOException(e);
-                        }
-                    }
+                    login(log);
 
                     String errorMsg = "Connection Failed.\n" +
                             "Validate the provided login credentials and server URL are correct.\n" +
@@ -97,70 +92,292 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
             throw new IOException(message);
         }
 
-        if (config.getDependencyScannerType() != DependencyScannerType.NONE) {
-            //---------------------------
-            //we do this in order to redirect the logs from the filesystem agent component to the build console
-            Logger rootLog = Logger.getLogger("");
-            StreamHandler handler = new StreamHandler(listener.getLogger(), new ComponentScanFormatter());
-            handler.setLevel(Level.ALL);
-            rootLog.addHandler(handler);
-            //---------------------------
-
-            try {
-                shraga.createDependencyScan();
-                dependencyScanCreated = true;
-            } catch (CxClientException e) {
-                log.error("Failed to create dependency scan.", e);
-                scanResults.setOsaCreateException(e);
-            } finally {
-                handler.flush();
-                rootLog.removeHandler(handler);
+        boolean succeeded = false;
+        try {
+            scan(session.getClient(), file, result, log);
+            succeeded = !hasErrors(scanResults);
+            return result;
+        } finally {
+            // A client that failed may have stale project or scan state, it is not reused.
+            if (!succeeded) {
+                session.markFailed();
             }
+            session.close();
+        }
+    }
+
+    private void scan(CxShragaClient shraga, File file, RemoteScanInfo result, CxLoggerAdapter log)
+            throws IOException, InterruptedException {
+        ScanResults scanResults = result.getScanResults();
+        boolean sastCreated = false;
+        boolean dependencyScanCreated = false;
+
+        boolean dependencyScanEnabled = config.getDependencyScannerType() != DependencyScannerType.NONE;
+        if (options.concurrentScans && dependencyScanEnabled && config.getSastEnabled()) {
+            runScansConcurrently(shraga, scanResults, log);
+            setPendingSastScan(result);
+            generateReports(file, result, log);
+            return;
+        }
+
+        if (dependencyScanEnabled) {
+            dependencyScanCreated = createDependencyScan(shraga, scanResults, log);
         }
 
         if (config.getSastEnabled()) {
-            try {
-                shraga.createSASTScan();
-                sastCreated = true;
-            } catch (IOException | CxClientException e) {
-                log.warn("Failed to create SAST scan: " + e.getMessage(), e);
-                scanResults.setSastCreateException(e);
-            }
+            sastCreated = createSASTScan(shraga, scanResults, log);
         }
         if (sastCreated) {
-            try {
-                SASTResults sastResults = config.getSynchronous() ? shraga.waitForSASTResults() : shraga.getLatestSASTResults();
-                scanResults.setSastResults(sastResults);
-            } catch (InterruptedException e) {
-                if (config.getSynchronous()) {
-                    cancelScan(shraga);
+            waitForSASTResults(shraga, scanResults, log);
+            setPendingSastScan(result);
+        }
+
+        if (dependencyScanCreated) {
+            waitForDependencyScanResults(shraga, scanResults, log);
+        }
+
+        if (config.getEnablePolicyViolations() && (scanResults.getDependencyScanResults() != null  || scanResults.getSastResults() != null)) {
+            shraga.printIsProjectViolated();
+        }
+
+        generateReports(file, result, log);
+    }
+
+    /**
+     * Logs in with a new client, so that a login failure is reported instead of a generic connection error.
+     */
+    private void login(CxLoggerAdapter log) throws IOException {
+        CxShragaClient client = null;
+        try {
+            client = CommonClientFactory.getInstance(config, log);
+            client.login();
+        } catch (CxClientException e) {
+            throw new IOException(e);
+        } finally {
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    private static boolean hasErrors(ScanResults scanResults) {
+        return scanResults.getSastCreateException() != null || scanResults.getSastWaitException() != null
+                || scanResults.getOsaCreateException() != null || scanResults.getOsaWaitException() != null;
+    }
+
+    /**
+     * Runs the SAST scan and the dependency scan in parallel, each with its own client, so that the build takes
+     * as long as the slower of the two instead of their sum.
+     */
+    private void runScansConcurrently(final CxShragaClient sastClient, final ScanResults scanResults, final CxLoggerAdapter log)
+            throws IOException, InterruptedException {
+        final CxSessionPool.Session dependencySession;
+        try {
+            dependencySession = CommonClientFactory.getScanSession(config, log);
+        } catch (Exception e) {
+            log.error("Failed to initialize dependency scan client.", e);
+            scanResults.setOsaCreateException(e);
+            if (createSASTScan(sastClient, scanResults, log)) {
+                waitForSASTResults(sastClient, scanResults, log);
+            }
+            return;
+        }
+        final CxShragaClient dependencyClient = dependencySession.getClient();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2,
+                new NamingThreadFactory(new DaemonThreadFactory(), "Checkmarx scan " + config.getProjectName()));
+        try {
+            Future<Boolean> sastTask = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    if (!createSASTScan(sastClient, scanResults, log)) {
+                        return false;
+                    }
+                    waitForSASTResults(sastClient, scanResults, log);
+                    return true;
                 }
+            });
+
+            final PrintStream console = listener.getLogger();
+            Future<Boolean> dependencyScanTask = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    // Log scopes are per thread, this task routes the component logs to the console of its build.
+                    try (CxBuildLogRouter.Scope ignored = CxBuildLogRouter.open(console)) {
+                        if (!createDependencyScan(dependencyClient, scanResults, log)) {
+                            return false;
+                        }
+                        waitForDependencyScanResults(dependencyClient, scanResults, log);
+                        return true;
+                    }
+                }
+            });
+
+            boolean sastCompleted;
+            try {
+                sastCompleted = awaitScan(sastTask, executor, log);
+            } catch (ExecutionException e) {
+                // The build fails, there is no point in waiting for the dependency scan.
+                dependencyScanTask.cancel(true);
+                dependencySession.markFailed();
                 throw e;
+            }
+            boolean dependencyScanCompleted = awaitScan(dependencyScanTask, executor, log);
 
-            } catch (CxClientException | IOException e) {
-                log.error("Failed to get SAST scan results: " + e.getMessage());
-                scanResults.setSastWaitException(e);
+            if (config.getEnablePolicyViolations()) {
+                // When waiting on the controller, SAST results are not here yet and the controller checks the policy instead.
+                if (sastCompleted && !isWaitingOnController()) {
+                    sastClient.printIsProjectViolated();
+                }
+                if (dependencyScanCompleted) {
+                    dependencyClient.printIsProjectViolated();
+                }
             }
+        } catch (ExecutionException e) {
+            // Scan failures are recorded in scanResults by the tasks themselves, so we only get here on unexpected errors.
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Concurrent scan execution failed: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+            if (scanResults.getOsaCreateException() != null || scanResults.getOsaWaitException() != null) {
+                dependencySession.markFailed();
+            }
+            dependencySession.close();
         }
+    }
 
-        if (dependencyScanCreated) {
-            try {
-                DependencyScanResults dsResults = config.getSynchronous() ?
-                        shraga.waitForDependencyScanResults() :
-                        shraga.getLatestDependencyScanResults();
-
-                scanResults.setDependencyScanResults(dsResults);
-            } catch (CxClientException e) {
-                log.error("Failed to get dependency scan results: " + e.getMessage());
-                scanResults.setOsaWaitException(e);
+    private boolean awaitScan(Future<Boolean> task, ExecutorService executor, CxLoggerAdapter log)
+            throws InterruptedException, ExecutionException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            log.info("Build was interrupted, cancelling running scans.");
+            // Interrupting the scan threads makes them stop waiting and cancel the SAST scan on the server.
+            executor.shutdownNow();
+            if (!executor.awaitTermination(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Scan threads did not stop within " + CANCEL_TIMEOUT_SECONDS + " seconds.");
             }
+            throw e;
         }
+    }
 
-        if (config.getEnablePolicyViolations() && (scanResults.getDependencyScanResults() != null  || scanResults.getSastResults() != null)) {
-            shraga.printIsProjectViolated();
+    private boolean createDependencyScan(CxShragaClient shraga, ScanResults scanResults, CxLoggerAdapter log)
+            throws IOException, InterruptedException {
+        //redirect the logs from the filesystem agent component to the console of this build only
+        try (CxBuildLogRouter.Scope ignored = CxBuildLogRouter.open(listener.getLogger())) {
+            shraga.createDependencyScan();
+            return true;
+        } catch (CxClientException e) {
+            log.error("Failed to create dependency scan.", e);
+            scanResults.setOsaCreateException(e);
+            return false;
+        }
+    }
+
+    private boolean createSASTScan(CxShragaClient shraga, ScanResults scanResults, CxLoggerAdapter log) throws InterruptedException {
+        File zipFile = null;
+        try {
+            zipFile = packSources(log);
+            sastScanId = shraga.createSASTScan();
+            return true;
+        } catch (IOException | CxClientException e) {
+            log.warn("Failed to create SAST scan: " + e.getMessage(), e);
+            scanResults.setSastCreateException(e);
+            return false;
+        } finally {
+            if (zipFile != null) {
+                config.setZipFile(null);
+                if (!zipFile.delete()) {
+                    zipFile.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs the sources with {@link CxSourcePackager} and passes the archive to the client, which would otherwise
+     * pack them on a single thread.
+     *
+     * @return the temporary archive, or null if the client should pack the sources itself
+     */
+    private File packSources(CxLoggerAdapter log) throws IOException, InterruptedException {
+        if (config.getZipFile() != null || Boolean.getBoolean(CxSourcePackager.class.getName() + ".disabled")) {
+            return null;
+        }
+
+        File zipFile = File.createTempFile("cx-sources-", ".zip");
+        boolean packed = false;
+        try {
+            CxSourceFilter filter = new CxSourceFilter(config.getSastFilterPattern(), config.getSastFolderExclusions());
+            new CxSourcePackager(filter, log).pack(new File(config.getSourceDir()), zipFile);
+            config.setZipFile(zipFile);
+            packed = true;
+            return zipFile;
+        } finally {
+            if (!packed) {
+                zipFile.delete();
+            }
+        }
+    }
+
+    private void waitForSASTResults(CxShragaClient shraga, ScanResults scanResults, CxLoggerAdapter log) throws InterruptedException {
+        if (isWaitingOnController()) {
+            log.info("SAST scan " + sastScanId + " was created. Results will be collected by the Jenkins controller.");
+            return;
+        }
+
+        try {
+            SASTResults sastResults = config.getSynchronous() ? shraga.waitForSASTResults() : shraga.getLatestSASTResults();
+            scanResults.setSastResults(sastResults);
+        } catch (InterruptedException e) {
+            if (config.getSynchronous()) {
+                cancelScan(shraga);
+            }
+            throw e;
+
+        } catch (CxClientException | IOException e) {
+            log.error("Failed to get SAST scan results: " + e.getMessage());
+            scanResults.setSastWaitException(e);
+        }
+    }
+
+    private boolean isWaitingOnController() {
+        return options.controllerSideWait && config.getSynchronous() && sastScanId != null;
+    }
+
+    private void setPendingSastScan(RemoteScanInfo result) {
+        if (isWaitingOnController()) {
+            result.setPendingSastScanId(sastScanId);
         }
+    }
 
-        return result;
+    /**
+     * Generates the reports on the agent, so that only their paths and a {@link RemoteScanSummary} are sent back to
+     * the controller instead of the scan results.
+     * The controller generates them itself when it still has to wait for the SAST results.
+     */
+    private void generateReports(File workspace, RemoteScanInfo result, CxLoggerAdapter log) throws InterruptedException {
+        if (options.transferReportsAsFiles && result.getPendingSastScanId() == null) {
+            new CxReportGenerator(config, log).generateForTransfer(workspace, result, options.sastPdfLink);
+            if (result.getReportsPath() != null) {
+                result.setSummary(RemoteScanSummary.of(config, result.getScanResults()));
+                result.setScanResults(null);
+            }
+        }
+    }
+
+    private void waitForDependencyScanResults(CxShragaClient shraga, ScanResults scanResults, CxLoggerAdapter log)
+            throws InterruptedException {
+        try {
+            DependencyScanResults dsResults = config.getSynchronous() ?
+                    shraga.waitForDependencyScanResults() :
+                    shraga.getLatestDependencyScanResults();
+
+            scanResults.setDependencyScanResults(dsResults);
+        } catch (CxClientException e) {
+            log.error("Failed to get dependency scan results: " + e.getMessage());
+            scanResults.setOsaWaitException(e);
+        }
     }
 
     private void cancelScan(CxShragaClient shraga) {
@@ -174,4 +391,45 @@ public class CxScanCallable implements FilePath.FileCallable<RemoteScanInfo>, Se
     public void checkRoles(RoleChecker checker) throws SecurityException {
 
     }
+
+    /**
+     * How the scans are run, in addition to the scan configuration.
+     */
+    public static class Options implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private boolean concurrentScans;
+        private boolean controllerSideWait;
+        private boolean transferReportsAsFiles;
+        private String sastPdfLink;
+
+        /**
+         * @see CxScanBuilder#isConcurrentScans()
+         */
+        public void setConcurrentScans(boolean concurrentScans) {
+            this.concurrentScans = concurrentScans;
+        }
+
+        /**
+         * @see CxScanBuilder#isControllerSideWait()
+         */
+        public void setControllerSideWait(boolean controllerSideWait) {
+            this.controllerSideWait = controllerSideWait;
+        }
+
+        /**
+         * @see CxScanBuilder#isTransferReportsAsFiles()
+         */
+        public void setTransferReportsAsFiles(boolean transferReportsAsFiles) {
+            this.transferReportsAsFiles = transferReportsAsFiles;
+        }
+
+        /**
+         * @param sastPdfLink link to the PDF report in the HTML report, or null if there is no PDF report
+         */
+        public void setSastPdfLink(String sastPdfLink) {
+            this.sastPdfLink = sastPdfLink;
+        }
+    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.checkmarx.jenkins;
 
 import com.checkmarx.jenkins.legacy8_7.OsaScanResult;
 import com.checkmarx.jenkins.legacy8_7.QueryResult;
+import com.checkmarx.jenkins.legacy8_7.QueryResultList;
 import com.checkmarx.jenkins.legacy8_7.SastScanResult;
 import com.checkmarx.jenkins.legacy8_7.ThresholdConfig;
 import com.cx.restclient.configuration.CxScanConfig;
@@ -10,20 +11,20 @@ import com.cx.restclient.sast.dto.SASTResults;
 import hudson.PluginWrapper;
 import hudson.model.Action;
 import hudson.model.Run;
-import hudson.util.IOUtils;
 import jenkins.model.Jenkins;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.jelly.XMLOutput;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.xml.sax.SAXException;
 
-import javax.servlet.ServletOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -38,13 +39,15 @@ public class CxScanResult implements Action {
     private final long projectId = 0;
     private boolean scanRanAsynchronous = false;
     private String serverUrl = "";
+    @Nullable
+    private String teamPath;
 
     private long scanId;
 
     private Boolean sastEnabled;
     private boolean osaEnabled;
 
-    //Results
+    //Results, only read from old build records. They are kept in CxScanResultDetails.
     private OsaScanResult osaScanResult;
     private SastScanResult sastScanResult;
 
@@ -57,10 +60,20 @@ public class CxScanResult implements Action {
 
     private File pdfReport;
     public static final String PDF_REPORT_NAME = "ScanReport.pdf";
+    private static final String LEGACY_HTML_REPORT_NAME = "report.html";
+    private static final String FIXED_LEGACY_HTML_REPORT_NAME = "report-fixed.html";
+    private static final String HTML_REPORT_NOT_FOUND = "<h1>Checkmarx HTML report not found<h1>";
     private boolean osaSuccessful; //osa fails flag for jelly
 
     private String htmlReportName;
 
+    @Nullable
+    private Integer reusedFromBuild;
+
+    private transient volatile SoftReference<CxScanResultDetails> details;
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
     public String getHtmlReportName() {
         return htmlReportName;
     }
@@ -73,13 +86,108 @@ public class CxScanResult implements Action {
         this.scanRanAsynchronous = !config.getSynchronous();
         this.sastEnabled = config.getSastEnabled();
         this.osaEnabled = config.getDependencyScannerType() == DependencyScannerType.OSA;
+        this.serverUrl = config.getUrl();
+        this.teamPath = config.getTeamPath() != null ? config.getTeamPath() : config.getTeamId();
+        this.owner = owner;
+    }
+
+    /**
+     * Creates a copy of the result of another build, for a build whose scan would have been identical,
+     * see {@link CxScanBuilder#isSkipUnchangedScans()}. Report files are copied separately.
+     */
+    public CxScanResult(Run<?, ?> owner, CxScanResult source) {
         this.owner = owner;
+        this.reusedFromBuild = source.reusedFromBuild != null ? source.reusedFromBuild : source.owner.getNumber();
+        this.scanRanAsynchronous = source.scanRanAsynchronous;
+        this.serverUrl = source.serverUrl;
+        this.teamPath = source.teamPath;
+        this.scanId = source.scanId;
+        this.sastEnabled = source.sastEnabled;
+        this.osaEnabled = source.osaEnabled;
+        this.osaScanResult = source.osaScanResult;
+        this.sastScanResult = source.sastScanResult;
+        this.thresholdsEnabled = source.thresholdsEnabled;
+        this.osaThresholdsEnabled = source.osaThresholdsEnabled;
+        this.sastThresholdConfig = source.sastThresholdConfig;
+        this.osaThresholdConfig = source.osaThresholdConfig;
+        this.isThresholdForNewResultExceeded = source.isThresholdForNewResultExceeded;
+        this.osaSuccessful = source.osaSuccessful;
+        this.htmlReportName = source.htmlReportName;
+
+        this.highCount = source.highCount;
+        this.mediumCount = source.mediumCount;
+        this.lowCount = source.lowCount;
+        this.infoCount = source.infoCount;
+        this.highQueryResultList = source.highQueryResultList;
+        this.mediumQueryResultList = source.mediumQueryResultList;
+        this.lowQueryResultList = source.lowQueryResultList;
+        this.infoQueryResultList = source.infoQueryResultList;
+        this.resultDeepLink = source.resultDeepLink;
+        this.scanStart = source.scanStart;
+        this.scanEnd = source.scanEnd;
+        this.linesOfCodeScanned = source.linesOfCodeScanned;
+        this.filesScanned = source.filesScanned;
+        this.scanType = source.scanType;
+        this.resultIsValid = source.resultIsValid;
+        this.errorMessage = source.errorMessage;
+
+        this.osaHighCount = source.osaHighCount;
+        this.osaMediumCount = source.osaMediumCount;
+        this.osaLowCount = source.osaLowCount;
+        this.osaVulnerableAndOutdatedLibs = source.osaVulnerableAndOutdatedLibs;
+        this.osaNoVulnerabilityLibs = source.osaNoVulnerabilityLibs;
+        this.dependencyScanResultsAvailable = source.dependencyScanResultsAvailable;
+
+        this.highThreshold = source.highThreshold;
+        this.mediumThreshold = source.mediumThreshold;
+        this.lowThreshold = source.lowThreshold;
+        this.osaHighThreshold = source.osaHighThreshold;
+        this.osaMediumThreshold = source.osaMediumThreshold;
+        this.osaLowThreshold = source.osaLowThreshold;
+    }
+
+    /**
+     * @return number of the build whose scan results were reused by this build, or null if this build ran its own scan
+     */
+    @Nullable
+    public Integer getReusedFromBuild() {
+        return reusedFromBuild;
     }
 
     public void setSastResults(SASTResults results) {
         this.highCount = results.getHigh();
         this.mediumCount = results.getMedium();
         this.lowCount = results.getLow();
+        this.infoCount = results.getInformation();
+    }
+
+    /**
+     * Sets the vulnerability counts of an OSA or SCA scan, which are kept in the OSA count fields.
+     */
+    public void setDependencyScanCounts(RemoteScanSummary summary) {
+        if (summary.isDependencyScanResultsAvailable()) {
+            this.osaHighCount = summary.getDependencyHigh();
+            this.osaMediumCount = summary.getDependencyMedium();
+            this.osaLowCount = summary.getDependencyLow();
+            this.dependencyScanResultsAvailable = true;
+        }
+    }
+
+    /**
+     * @return whether the OSA count fields hold the counts of an OSA or SCA scan of this build
+     */
+    public boolean isDependencyScanResultsAvailable() {
+        return dependencyScanResultsAvailable;
+    }
+
+    /**
+     * Sets the vulnerability counts when only the scan statistics are available, without the detailed results.
+     */
+    public void setSastCounts(int high, int medium, int low, int info) {
+        this.highCount = high;
+        this.mediumCount = medium;
+        this.lowCount = low;
+        this.infoCount = info;
     }
 
     public Boolean getSastEnabled() {
@@ -91,10 +199,6 @@ public class CxScanResult implements Action {
         this.serverUrl = serverUrl;
         this.resultIsValid = false; //sast fails flag for jelly
         this.errorMessage = "No Scan Results"; // error message to appear if results were not parsed
-        this.highQueryResultList = new LinkedList<>();
-        this.mediumQueryResultList = new LinkedList<>();
-        this.lowQueryResultList = new LinkedList<>();
-        this.infoQueryResultList = new LinkedList<>();
     }
 
 
@@ -209,15 +313,28 @@ public class CxScanResult implements Action {
     }
 
     public void doPdfReport(StaplerRequest req, StaplerResponse rsp) throws IOException {
-        rsp.setContentType("application/pdf");
-        ServletOutputStream outputStream = rsp.getOutputStream();
         File buildDirectory = owner.getRootDir();
         File a = new File(buildDirectory, "/checkmarx/" + PDF_REPORT_NAME);
+        new CxReportDownload(a, "application/pdf", owner.getExternalizableId()).serve(req, rsp);
+    }
 
-        IOUtils.copy(a, outputStream);
-
-        outputStream.flush();
-        outputStream.close();
+    /**
+     * Reads the findings index of the build for one use, it is not kept open, see {@link CxFindingsIndex#read}.
+     *
+     * @return the findings index of the build, or null for builds that do not have one
+     */
+    @Nullable
+    CxFindingsIndex readFindingsIndex() {
+        File indexFile = new File(owner.getRootDir(), "checkmarx/" + CxFindingsIndex.FILE_NAME);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            return CxFindingsIndex.read(indexFile);
+        } catch (IOException e) {
+            serverLog.warn("Failed to read Checkmarx findings index of " + owner + ": " + e.getMessage());
+            return null;
+        }
     }
 
     static String resolveHTMLReportName(boolean sastEnabled, DependencyScannerType dependencyScanner) {
@@ -233,51 +350,79 @@ public class CxScanResult implements Action {
     }
 
     public String getHtmlReport() throws IOException {
-        String htmlReport;
+        File reportFile = getHtmlReportFile();
+        if (reportFile == null) {
+            return HTML_REPORT_NOT_FOUND;
+        }
+        return CxHtmlReportCache.getInstance().read(reportFile);
+    }
+
+    /**
+     * Writes the HTML report to a page, without building it as a single string.
+     */
+    public void writeHtmlReport(XMLOutput output) throws IOException, SAXException {
+        File reportFile = getHtmlReportFile();
+        if (reportFile == null) {
+            output.write(HTML_REPORT_NOT_FOUND);
+            return;
+        }
+        CxHtmlReportCache.getInstance().write(reportFile, output);
+    }
+
+    @Nullable
+    private File getHtmlReportFile() throws IOException {
         File cxBuildDirectory = new File(owner.getRootDir(), "checkmarx");
 
         //backward compatibility (up to version 8.80.0)
         if(htmlReportName == null) {
-            File oldReport = new File(cxBuildDirectory, "report.html");
+            File oldReport = new File(cxBuildDirectory, LEGACY_HTML_REPORT_NAME);
             if(oldReport.exists()) {
-                htmlReport = FileUtils.readFileToString(oldReport, Charset.defaultCharset());
-                Pattern patt = Pattern.compile("(<div[^>]*)(\\s*/>)");
-                Matcher mattcher = patt.matcher(htmlReport);
-                if (mattcher.find()){
-                    htmlReport = mattcher.replaceAll("$1></div>");
-                }
-                return htmlReport;
+                return fixLegacyHtmlReport(oldReport);
             }
         }
 
-        Collection<File> files = FileUtils.listFiles(cxBuildDirectory, null, false);
+        // Only a file of the checkmarx directory is shown, not a link to another file.
+        if (htmlReportName == null || htmlReportName.indexOf('/') >= 0 || htmlReportName.indexOf('\\') >= 0
+                || htmlReportName.equals(".") || htmlReportName.equals("..")) {
+            return null;
+        }
+        File reportFile = new File(cxBuildDirectory, htmlReportName);
+        return Files.isRegularFile(reportFile.toPath(), LinkOption.NOFOLLOW_LINKS) ? reportFile : null;
+    }
 
-        for (File f: files) {
-            if(htmlReportName.equals(f.getName())) {
-                htmlReport = FileUtils.readFileToString(f, Charset.defaultCharset());
-                return htmlReport;
-            }
+    /**
+     * Reports of old versions contain self-closing div elements that browsers do not close. The fixed report is saved
+     * next to the original one the first time it is viewed.
+     */
+    private static File fixLegacyHtmlReport(File oldReport) throws IOException {
+        File fixedReport = new File(oldReport.getParentFile(), FIXED_LEGACY_HTML_REPORT_NAME);
+        if (fixedReport.isFile()) {
+            return fixedReport;
         }
 
-        return "<h1>Checkmarx HTML report not found<h1>";
+        String htmlReport = CxReportStorage.readString(oldReport);
+        Pattern patt = Pattern.compile("(<div[^>]*)(\\s*/>)");
+        Matcher mattcher = patt.matcher(htmlReport);
+        if (mattcher.find()){
+            htmlReport = mattcher.replaceAll("$1></div>");
+        }
+
+        // Write to a temporary file first, so that a concurrent view never reads a partial report.
+        File tempReport = File.createTempFile(FIXED_LEGACY_HTML_REPORT_NAME, ".tmp", oldReport.getParentFile());
+        CxReportStorage.write(tempReport, htmlReport);
+        if (!tempReport.renameTo(fixedReport)) {
+            tempReport.delete();
+        }
+        return fixedReport.isFile() ? fixedReport : oldReport;
     }
 
     /**
-     * Gets the test result of the previous build, if it's recorded, or null.
+     * Gets the test result of the previous build, if it's recorded, or null. The build is found in the
+     * {@link CxTrendIndex} of the job, see {@link CxTrendIndex#getPreviousBuild(Run)}.
      */
-
     public CxScanResult getPreviousResult() {
-        Run<?, ?> b = owner;
-        while (true) {
-            b = b.getPreviousBuild();
-            if (b == null) {
-                return null;
-            }
-            CxScanResult r = b.getAction(CxScanResult.class);
-            if (r != null) {
-                return r;
-            }
-        }
+        Run<?, ?> b = CxTrendIndex.getPreviousBuild(owner);
+        return b != null ? b.getAction(CxScanResult.class) : null;
     }
 
 
@@ -289,6 +434,18 @@ public class CxScanResult implements Action {
         return scanRanAsynchronous;
     }
 
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    /**
+     * @return the team of the Checkmarx project, or null for builds recorded before it was kept
+     */
+    @Nullable
+    public String getTeamPath() {
+        return teamPath;
+    }
+
     public String getProjectStateUrl() {
         return serverUrl + "/CxWebClient/portal#/projectState/" + projectId + "/Summary";
     }
@@ -303,26 +460,120 @@ public class CxScanResult implements Action {
     }
 
     public OsaScanResult getOsaScanResult() {
-        return osaScanResult;
+        return getDetails().osaScanResult;
     }
 
-    public void setOsaScanResult(OsaScanResult osaScanResult) {
-        this.osaScanResult = osaScanResult;
+    public synchronized void setOsaScanResult(OsaScanResult osaScanResult) {
+        CxScanResultDetails current = getDetails();
+        current.osaScanResult = osaScanResult;
 
         //todo erase when legacy code is no longer needed
         if (osaScanResult.isOsaLicense()) {
             initializeOsaLegacyVariables(osaScanResult);
         }
+        saveDetails(current);
     }
 
     public SastScanResult getSastScanResult() {
-        return sastScanResult;
+        return getDetails().sastScanResult;
     }
 
-    public void setSastScanResult(SastScanResult sastScanResult) {
-        this.sastScanResult = sastScanResult;
+    public synchronized void setSastScanResult(SastScanResult sastScanResult) {
+        CxScanResultDetails current = getDetails();
+        current.sastScanResult = sastScanResult;
         //todo erase when legacy code is no longer needed
         initializeSastLegacyVariables(sastScanResult);
+        saveDetails(current);
+    }
+
+    /**
+     * Loads the detailed results on demand. They stay in memory only as long as there is no memory pressure.
+     * <p>
+     * Build records that were written before the details were kept separately are migrated here, when their details
+     * are first needed, rather than when the build is loaded. Only the details file is written: the build record
+     * drops the details the next time the build is saved.
+     */
+    private CxScanResultDetails getDetails() {
+        SoftReference<CxScanResultDetails> loaded = details;
+        CxScanResultDetails current = loaded != null ? loaded.get() : null;
+        return current != null ? current : loadDetails();
+    }
+
+    private synchronized CxScanResultDetails loadDetails() {
+        CxScanResultDetails current = details != null ? details.get() : null;
+        if (current == null) {
+            CxScanResultDetails inline = getInlineDetails();
+            try {
+                current = CxScanResultDetails.load(owner);
+            } catch (IOException e) {
+                serverLog.warn("Failed to load Checkmarx scan result details of " + owner + ": " + e.getMessage());
+            }
+            if (inline != null) {
+                // The build record keeps the details until they are saved separately, e.g. when the build is read-only.
+                if (current != null) {
+                    clearInlineDetails();
+                } else {
+                    current = inline;
+                    if (saveDetails(current)) {
+                        clearInlineDetails();
+                    }
+                }
+            }
+            if (current == null) {
+                CxFindingsIndex index = readFindingsIndex();
+                current = index != null ? CxScanResultDetails.fromFindingsIndex(index) : new CxScanResultDetails();
+            }
+            details = new SoftReference<>(current);
+        }
+        return current;
+    }
+
+    /**
+     * @return whether the details were saved
+     */
+    private boolean saveDetails(CxScanResultDetails current) {
+        details = new SoftReference<>(current);
+        try {
+            current.save(owner);
+            return true;
+        } catch (IOException e) {
+            serverLog.warn("Failed to save Checkmarx scan result details of " + owner + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Detailed results of a build record that was written before they were kept separately. A record that was loaded
+     * again before it was saved without them still has them, but they are then already saved separately.
+     *
+     * @return the details of the record, or null if it has none
+     */
+    private CxScanResultDetails getInlineDetails() {
+        if (sastScanResult == null && osaScanResult == null && highQueryResultList == null && mediumQueryResultList == null
+                && lowQueryResultList == null && infoQueryResultList == null) {
+            return null;
+        }
+        CxScanResultDetails inline = new CxScanResultDetails();
+        inline.sastScanResult = sastScanResult;
+        inline.osaScanResult = osaScanResult;
+        inline.highQueryResultList = highQueryResultList;
+        inline.mediumQueryResultList = mediumQueryResultList;
+        inline.lowQueryResultList = lowQueryResultList;
+        inline.infoQueryResultList = infoQueryResultList;
+        return inline;
+    }
+
+    /**
+     * Drops the detailed results from the build record, once they are saved separately. They are removed from
+     * build.xml the next time the build is saved.
+     */
+    private void clearInlineDetails() {
+        sastScanResult = null;
+        osaScanResult = null;
+        highQueryResultList = null;
+        mediumQueryResultList = null;
+        lowQueryResultList = null;
+        infoQueryResultList = null;
     }
 
     public void setScanId(long scanId) {
@@ -339,16 +590,16 @@ public class CxScanResult implements Action {
 
 
     public boolean isThresholdExceeded() {
-        boolean ret = isThresholdExceededByLevel(sastScanResult.getHighCount(), sastThresholdConfig.getHighSeverity());
-        ret |= isThresholdExceededByLevel(sastScanResult.getMediumCount(), sastThresholdConfig.getMediumSeverity());
-        ret |= isThresholdExceededByLevel(sastScanResult.getLowCount(), sastThresholdConfig.getLowSeverity());
+        boolean ret = isThresholdExceededByLevel(highCount, sastThresholdConfig.getHighSeverity());
+        ret |= isThresholdExceededByLevel(mediumCount, sastThresholdConfig.getMediumSeverity());
+        ret |= isThresholdExceededByLevel(lowCount, sastThresholdConfig.getLowSeverity());
         return ret;
     }
 
     public boolean isOsaThresholdExceeded() {
-        boolean ret = isThresholdExceededByLevel(osaScanResult.getOsaHighCount(), osaThresholdConfig.getHighSeverity());
-        ret |= isThresholdExceededByLevel(osaScanResult.getOsaMediumCount(), osaThresholdConfig.getMediumSeverity());
-        ret |= isThresholdExceededByLevel(osaScanResult.getOsaLowCount(), osaThresholdConfig.getLowSeverity());
+        boolean ret = isThresholdExceededByLevel(osaHighCount, osaThresholdConfig.getHighSeverity());
+        ret |= isThresholdExceededByLevel(osaMediumCount, osaThresholdConfig.getMediumSeverity());
+        ret |= isThresholdExceededByLevel(osaLowCount, osaThresholdConfig.getLowSeverity());
         return ret;
     }
 
@@ -371,10 +622,11 @@ public class CxScanResult implements Action {
     private int lowCount;
     private int infoCount;
 
-    private LinkedList<QueryResult> highQueryResultList;
-    private LinkedList<QueryResult> mediumQueryResultList;
-    private LinkedList<QueryResult> lowQueryResultList;
-    private LinkedList<QueryResult> infoQueryResultList;
+    // Only read from old build records, kept in CxScanResultDetails.
+    private QueryResultList highQueryResultList;
+    private QueryResultList mediumQueryResultList;
+    private QueryResultList lowQueryResultList;
+    private QueryResultList infoQueryResultList;
 
     @NotNull
     private String resultDeepLink;
@@ -394,16 +646,17 @@ public class CxScanResult implements Action {
     private String errorMessage;
 
 
-    public void initializeSastLegacyVariables(SastScanResult sastScanResult) {
+    public synchronized void initializeSastLegacyVariables(SastScanResult sastScanResult) {
         this.highCount = sastScanResult.getHighCount();
         this.mediumCount = sastScanResult.getMediumCount();
         this.lowCount = sastScanResult.getLowCount();
         this.infoCount = sastScanResult.getInfoCount();
 
-        this.highQueryResultList = sastScanResult.getHighQueryResultList();
-        this.mediumQueryResultList = sastScanResult.getMediumQueryResultList();
-        this.lowQueryResultList = sastScanResult.getLowQueryResultList();
-        this.infoQueryResultList = sastScanResult.getInfoQueryResultList();
+        CxScanResultDetails current = getDetails();
+        current.highQueryResultList = sastScanResult.getHighQueryResultList();
+        current.mediumQueryResultList = sastScanResult.getMediumQueryResultList();
+        current.lowQueryResultList = sastScanResult.getLowQueryResultList();
+        current.infoQueryResultList = sastScanResult.getInfoQueryResultList();
 
         this.resultDeepLink = sastScanResult.getResultDeepLink();
         this.scanStart = sastScanResult.getScanStart();
@@ -471,19 +724,23 @@ public class CxScanResult implements Action {
     }
 
     public List<QueryResult> getHighQueryResultList() {
-        return highQueryResultList;
+        return nonNull(getDetails().highQueryResultList);
     }
 
     public List<QueryResult> getMediumQueryResultList() {
-        return mediumQueryResultList;
+        return nonNull(getDetails().mediumQueryResultList);
     }
 
     public List<QueryResult> getLowQueryResultList() {
-        return lowQueryResultList;
+        return nonNull(getDetails().lowQueryResultList);
     }
 
     public List<QueryResult> getInfoQueryResultList() {
-        return infoQueryResultList;
+        return nonNull(getDetails().infoQueryResultList);
+    }
+
+    private static List<QueryResult> nonNull(@Nullable List<QueryResult> queryResults) {
+        return queryResults != null ? queryResults : Collections.<QueryResult>emptyList();
     }
 
     //osa results
@@ -492,6 +749,7 @@ public class CxScanResult implements Action {
     private int osaLowCount;
     private int osaVulnerableAndOutdatedLibs;
     private int osaNoVulnerabilityLibs;
+    private boolean dependencyScanResultsAvailable;
 
     public void initializeOsaLegacyVariables(OsaScanResult osaScanResult) {
         if (osaScanResult != null) {
@@ -0,0 +1,95 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.legacy8_7.OsaScanResult;
+import com.checkmarx.jenkins.legacy8_7.QueryResult;
+import com.checkmarx.jenkins.legacy8_7.QueryResultList;
+import com.checkmarx.jenkins.legacy8_7.SastScanResult;
+import hudson.XmlFile;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The detailed results of a {@link CxScanResult}: per-query result lists and the legacy scan result objects with
+ * their JSON documents. They are kept in a file of their own in the build directory instead of {@code build.xml},
+ * so that loading a build only loads the summary counts. Builds that only have a {@link CxFindingsIndex} get their
+ * per-query result lists from the index.
+ */
+class CxScanResultDetails {
+
+    static final String FILE_NAME = "scanResultDetails.xml";
+
+    SastScanResult sastScanResult;
+    OsaScanResult osaScanResult;
+    QueryResultList highQueryResultList;
+    QueryResultList mediumQueryResultList;
+    QueryResultList lowQueryResultList;
+    QueryResultList infoQueryResultList;
+
+    /**
+     * @return the saved details of the build, or null if it has none
+     */
+    @Nullable
+    static CxScanResultDetails load(Run<?, ?> run) throws IOException {
+        XmlFile file = getFile(run);
+        if (!file.exists()) {
+            return null;
+        }
+        return (CxScanResultDetails) file.read();
+    }
+
+    /**
+     * Counts the results of each query by severity, in the order of the report. False positives are not counted.
+     */
+    static CxScanResultDetails fromFindingsIndex(CxFindingsIndex index) {
+        List<Map<String, Integer>> countsBySeverity = new ArrayList<>();
+        for (int severity = CxFindingsIndex.SEVERITY_INFO; severity <= CxFindingsIndex.SEVERITY_HIGH; severity++) {
+            countsBySeverity.add(new LinkedHashMap<String, Integer>());
+        }
+        for (int row = 0; row < index.size(); row++) {
+            int severity = index.getSeverity(row);
+            if (severity < 0 || severity >= countsBySeverity.size() || index.isFalsePositive(row)) {
+                continue;
+            }
+            Map<String, Integer> counts = countsBySeverity.get(severity);
+            String queryName = index.getQueryName(row);
+            Integer count = counts.get(queryName);
+            counts.put(queryName, count != null ? count + 1 : 1);
+        }
+
+        CxScanResultDetails details = new CxScanResultDetails();
+        details.highQueryResultList = toQueryResultList(countsBySeverity.get(CxFindingsIndex.SEVERITY_HIGH), "High");
+        details.mediumQueryResultList = toQueryResultList(countsBySeverity.get(CxFindingsIndex.SEVERITY_MEDIUM), "Medium");
+        details.lowQueryResultList = toQueryResultList(countsBySeverity.get(CxFindingsIndex.SEVERITY_LOW), "Low");
+        details.infoQueryResultList = toQueryResultList(countsBySeverity.get(CxFindingsIndex.SEVERITY_INFO), "Information");
+        return details;
+    }
+
+    private static QueryResultList toQueryResultList(Map<String, Integer> counts, String severity) {
+        QueryResultList list = new QueryResultList();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            QueryResult queryResult = new QueryResult();
+            queryResult.setName(entry.getKey());
+            queryResult.setSeverity(severity);
+            queryResult.setCount(entry.getValue());
+            list.add(queryResult);
+        }
+        list.trimToSize();
+        return list;
+    }
+
+    void save(Run<?, ?> run) throws IOException {
+        getFile(run).write(this);
+    }
+
+    private static XmlFile getFile(Run<?, ?> run) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(new File(run.getRootDir(), "checkmarx"), FILE_NAME));
+    }
+}
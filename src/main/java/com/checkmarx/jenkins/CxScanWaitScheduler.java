@@ -0,0 +1,473 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.legacy8_7.ThresholdConfig;
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.dto.DependencyScannerType;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.PeriodicWork;
+import hudson.model.Project;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows submitted SAST scans from the Jenkins controller, so that neither the agent nor a dedicated thread per build
+ * is busy while the scan is queued or running on the Checkmarx server.
+ * <p>
+ * All pending scans are polled by this single periodic task. Builds wait on the {@link CompletableFuture} returned by
+ * {@link #waitFor}. The scan ids are also persisted to {@code checkmarx-pending-scans.xml}, so that the outcome of a scan
+ * that was still running when the controller restarted is attached to its build once the scan finishes.
+ */
+@Extension
+public class CxScanWaitScheduler extends AsyncPeriodicWork {
+
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    private static final String PROPERTY_PREFIX = CxScanWaitScheduler.class.getName();
+    private static final long TICK_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MIN_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(
+            Integer.getInteger(PROPERTY_PREFIX + ".minPollIntervalSeconds", 5));
+    private static final long MAX_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(
+            Integer.getInteger(PROPERTY_PREFIX + ".maxPollIntervalSeconds", 60));
+    private static final long INITIAL_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long METRICS_LOG_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // Scans that were resumed after a restart have no build waiting for them, give up on them eventually.
+    private static final long RECOVERED_SCAN_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(
+            Integer.getInteger(PROPERTY_PREFIX + ".recoveredScanMaxAgeHours", 24));
+    private static final String REGISTRY_FILE_NAME = "checkmarx-pending-scans.xml";
+
+    private final Map<String, PendingScan> pendingScans = new ConcurrentHashMap<>();
+    private final Map<CxSessionPool.SessionKey, CxSastStatusClient> statusClients = new ConcurrentHashMap<>();
+    private final CxPollingMetrics metrics = new CxPollingMetrics();
+    private volatile long lastMetricsLogged = System.currentTimeMillis();
+
+    public CxScanWaitScheduler() {
+        super("Checkmarx scan wait scheduler");
+    }
+
+    static CxScanWaitScheduler get() {
+        return PeriodicWork.all().get(CxScanWaitScheduler.class);
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TICK_MILLIS;
+    }
+
+    /**
+     * Registers a submitted SAST scan for polling. The settings of the scan that are needed to attach its results
+     * after a restart are kept with it.
+     *
+     * @return a future that is completed with the final status name of the scan, e.g. "Finished" or "Failed".
+     */
+    CompletableFuture<String> waitFor(Run<?, ?> run, CxScanConfig config, CxCredentials credentials,
+                                      boolean enableCertificateValidation, long scanId) throws IOException {
+        PendingScan scan = new PendingScan(run, config, credentials.getServerUrl(), scanId, enableCertificateValidation);
+        scan.setCredentials(credentials);
+        scan.result = new CompletableFuture<>();
+        scan.nextPollAt = System.currentTimeMillis() + INITIAL_POLL_INTERVAL_MILLIS;
+        pendingScans.put(scan.getId(), scan);
+        saveRegistry();
+        return scan.result;
+    }
+
+    /**
+     * Stops polling for the scan of the given build.
+     *
+     * @param cancelOnServer whether the scan should also be cancelled on the Checkmarx server
+     */
+    void cancel(Run<?, ?> run, boolean cancelOnServer) {
+        PendingScan scan = pendingScans.remove(PendingScan.idOf(run.getParent().getFullName(), run.getNumber()));
+        if (scan == null) {
+            return;
+        }
+        saveRegistry();
+        if (scan.result != null) {
+            scan.result.cancel(false);
+        }
+        if (cancelOnServer) {
+            try {
+                getStatusClient(scan).cancelScan(scan.scanId);
+            } catch (IOException e) {
+                serverLog.warn("Failed to cancel SAST scan " + scan.scanId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns a client that reports the status of SAST scans, shared by all the scans on the same server and credentials.
+     */
+    CxSastStatusClient getStatusClient(CxCredentials credentials, boolean enableCertificateValidation) throws IOException {
+        CxSessionPool.SessionKey key = new CxSessionPool.SessionKey(credentials, enableCertificateValidation);
+        CxSastStatusClient client = statusClients.get(key);
+        if (client == null) {
+            CxSastStatusClient created = new CxSastStatusClient(credentials, enableCertificateValidation, serverLog);
+            client = statusClients.putIfAbsent(key, created);
+            if (client == null) {
+                client = created;
+            } else {
+                created.close();
+            }
+        }
+        return client;
+    }
+
+    int getPendingScanCount() {
+        return pendingScans.size();
+    }
+
+    CxPollingMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        long now = System.currentTimeMillis();
+        boolean changed = false;
+
+        // Group the scans by server and user, so that a single queue request serves all the scans of a group.
+        Map<CxSessionPool.SessionKey, List<PendingScan>> groups = new HashMap<>();
+        Iterator<PendingScan> it = pendingScans.values().iterator();
+        while (it.hasNext()) {
+            PendingScan scan = it.next();
+            if (scan.result != null && scan.result.isDone()) {
+                it.remove();
+                changed = true;
+                continue;
+            }
+            List<PendingScan> group = groups.get(scan.key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(scan.key, group);
+            }
+            group.add(scan);
+        }
+
+        for (List<PendingScan> group : groups.values()) {
+            if (isAnyDue(group, now)) {
+                changed |= pollGroup(group, now);
+            }
+        }
+
+        if (changed) {
+            saveRegistry();
+        }
+
+        if (now - lastMetricsLogged > METRICS_LOG_INTERVAL_MILLIS && metrics.getBatchPolls() > 0) {
+            lastMetricsLogged = now;
+            serverLog.info(metrics.toString());
+        }
+    }
+
+    private static boolean isAnyDue(List<PendingScan> group, long now) {
+        for (PendingScan scan : group) {
+            if (now >= scan.nextPollAt) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Refreshes the state of all the scans of one server with one queue request. Only the scans that have left
+     * the queue are queried individually, to get their final status.
+     *
+     * @return whether any scan was removed from the pending scans
+     */
+    private boolean pollGroup(List<PendingScan> group, long now) {
+        boolean changed = false;
+        CxSastStatusClient client;
+        Map<Long, CxSastStatusClient.QueuedScan> queue;
+        try {
+            client = getStatusClient(group.get(0));
+            long start = System.currentTimeMillis();
+            queue = client.getScansQueue();
+            metrics.recordBatchPoll(group.size(), System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            // Keep polling, the server may be temporarily unavailable. The build enforces its own timeout.
+            metrics.recordFailure();
+            serverLog.warn("Failed to get the scan queue of " + group.get(0).key.getServerUrl() + ": " + e.getMessage());
+            for (PendingScan scan : group) {
+                if (scan.result == null && now - scan.submittedAt > RECOVERED_SCAN_MAX_AGE_MILLIS) {
+                    pendingScans.remove(scan.getId());
+                    changed = true;
+                }
+                scan.backOff(now);
+            }
+            return changed;
+        }
+
+        for (PendingScan scan : group) {
+            CxSastStatusClient.QueuedScan queued = queue.get(scan.scanId);
+            if (queued != null) {
+                // Scans that are not due yet got a free refresh, keep their schedule.
+                if (now >= scan.nextPollAt) {
+                    scan.scheduleNextPoll(queued, now);
+                }
+                continue;
+            }
+
+            String status;
+            try {
+                long start = System.currentTimeMillis();
+                status = client.getScanStatus(scan.scanId);
+                metrics.recordStatusPoll(System.currentTimeMillis() - start);
+            } catch (IOException e) {
+                metrics.recordFailure();
+                serverLog.warn("Failed to get the status of SAST scan " + scan.scanId + ": " + e.getMessage());
+                scan.backOff(now);
+                continue;
+            }
+
+            if (!CxSastStatusClient.isFinalStatus(status)) {
+                // Not queued and not finished yet, e.g. while the results are being saved.
+                scan.nextPollAt = now + MIN_POLL_INTERVAL_MILLIS;
+                continue;
+            }
+
+            pendingScans.remove(scan.getId());
+            changed = true;
+            if (scan.result != null) {
+                scan.result.complete(status);
+            } else {
+                attachRecoveredResult(scan, status);
+            }
+        }
+        return changed;
+    }
+
+    private CxSastStatusClient getStatusClient(PendingScan scan) throws IOException {
+        return getStatusClient(scan.credentials, scan.enableCertificateValidation);
+    }
+
+    /**
+     * Adds the vulnerability counts of a scan that finished after the controller was restarted to its build, and adds
+     * the build to the trend of its job. The build itself was aborted by the restart, so exceeded thresholds are only
+     * shown with the results and logged. Policy violations are not checked, that needs a scan session of the build.
+     */
+    private void attachRecoveredResult(PendingScan scan, String status) {
+        Run<?, ?> run = scan.findRun();
+        if (run == null || run.getAction(CxScanResult.class) != null) {
+            return;
+        }
+
+        if (!CxSastStatusClient.STATUS_FINISHED.equalsIgnoreCase(status)) {
+            serverLog.info(String.format("SAST scan %d of %s ended with status %s after restart.",
+                    scan.scanId, run.getFullDisplayName(), status));
+            return;
+        }
+
+        try {
+            CxSastStatusClient.ScanStatistics statistics = getStatusClient(scan).getResultsStatistics(scan.scanId);
+
+            CxScanResult cxScanResult = new CxScanResult(run, scan.toScanConfig());
+            cxScanResult.setScanId(scan.scanId);
+            cxScanResult.setSastCounts(statistics.high, statistics.medium, statistics.low, statistics.info);
+            if (Boolean.TRUE.equals(scan.sastThresholdsEnabled)) {
+                ThresholdConfig thresholdConfig = new ThresholdConfig();
+                thresholdConfig.setHighSeverity(scan.sastHighThreshold);
+                thresholdConfig.setMediumSeverity(scan.sastMediumThreshold);
+                thresholdConfig.setLowSeverity(scan.sastLowThreshold);
+                cxScanResult.setThresholds(thresholdConfig);
+                if (isExceeded(statistics.high, scan.sastHighThreshold) || isExceeded(statistics.medium, scan.sastMediumThreshold)
+                        || isExceeded(statistics.low, scan.sastLowThreshold)) {
+                    serverLog.warn(String.format("SAST scan %d of %s exceeded the vulnerability thresholds.",
+                            scan.scanId, run.getFullDisplayName()));
+                }
+            }
+            run.addAction(cxScanResult);
+            run.save();
+            serverLog.info(String.format("Attached results of SAST scan %d to %s after restart.", scan.scanId, run.getFullDisplayName()));
+
+            // The build completed without a result, so CxRunListener did not add it to the trend.
+            CxRunListener.updateTrend(run);
+        } catch (IOException e) {
+            serverLog.warn("Failed to attach results of SAST scan " + scan.scanId + " to " + run.getFullDisplayName() + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isExceeded(int count, Integer threshold) {
+        return threshold != null && count > threshold;
+    }
+
+    private synchronized void saveRegistry() {
+        try {
+            getRegistryFile().write(new ArrayList<>(pendingScans.values()));
+        } catch (IOException e) {
+            serverLog.warn("Failed to save pending Checkmarx scans: " + e.getMessage());
+        }
+    }
+
+    private static XmlFile getRegistryFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.getInstance().getRootDir(), REGISTRY_FILE_NAME));
+    }
+
+    /**
+     * Resumes polling for the scans that were pending when the controller stopped.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resumePendingScans() {
+        XmlFile registry = getRegistryFile();
+        if (!registry.exists()) {
+            return;
+        }
+
+        CxScanWaitScheduler scheduler = get();
+        if (scheduler == null) {
+            return;
+        }
+
+        List<PendingScan> scans;
+        try {
+            @SuppressWarnings("unchecked")
+            List<PendingScan> read = (List<PendingScan>) registry.read();
+            scans = read;
+        } catch (IOException | ClassCastException e) {
+            serverLog.warn("Failed to read pending Checkmarx scans: " + e.getMessage());
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (PendingScan scan : scans) {
+            Run<?, ?> run = scan.findRun();
+            CxScanBuilder builder = run != null && run.getParent() instanceof Project ?
+                    (CxScanBuilder) ((Project<?, ?>) run.getParent()).getBuildersList().get(CxScanBuilder.class) : null;
+            if (builder == null || now - scan.submittedAt > RECOVERED_SCAN_MAX_AGE_MILLIS) {
+                continue;
+            }
+
+            // Credentials are never persisted in the registry, resolve them again from the job.
+            scan.setCredentials(CxCredentials.resolveCred(builder, builder.getDescriptor(), run));
+            scan.nextPollAt = now;
+            scheduler.pendingScans.put(scan.getId(), scan);
+        }
+        serverLog.info("Resumed polling for " + scheduler.pendingScans.size() + " pending Checkmarx scan(s).");
+        scheduler.saveRegistry();
+    }
+
+    /**
+     * A submitted SAST scan and the build that is waiting for it.
+     */
+    static class PendingScan {
+        private final String jobFullName;
+        private final int buildNumber;
+        private final String serverUrl;
+        private final long scanId;
+        private final boolean enableCertificateValidation;
+        private final long submittedAt;
+        // Settings of the scan, to attach its results after a restart. They are missing in older registries.
+        private final String projectName;
+        private final String teamPath;
+        private final Boolean sastThresholdsEnabled;
+        private final Integer sastHighThreshold;
+        private final Integer sastMediumThreshold;
+        private final Integer sastLowThreshold;
+
+        private transient CxCredentials credentials;
+        private transient CxSessionPool.SessionKey key;
+        private transient CompletableFuture<String> result;
+        private transient volatile long nextPollAt;
+        private transient long pollInterval = INITIAL_POLL_INTERVAL_MILLIS;
+        private transient long progressSince;
+        private transient int progressSincePercent;
+
+        PendingScan(Run<?, ?> run, CxScanConfig config, String serverUrl, long scanId, boolean enableCertificateValidation) {
+            this.jobFullName = run.getParent().getFullName();
+            this.buildNumber = run.getNumber();
+            this.serverUrl = serverUrl;
+            this.scanId = scanId;
+            this.enableCertificateValidation = enableCertificateValidation;
+            this.submittedAt = System.currentTimeMillis();
+            this.projectName = config.getProjectName();
+            this.teamPath = config.getTeamPath() != null ? config.getTeamPath() : config.getTeamId();
+            this.sastThresholdsEnabled = config.getSastThresholdsEnabled();
+            this.sastHighThreshold = config.getSastHighThreshold();
+            this.sastMediumThreshold = config.getSastMediumThreshold();
+            this.sastLowThreshold = config.getSastLowThreshold();
+        }
+
+        /**
+         * Rebuilds the settings of the scan that are shown with its results.
+         */
+        CxScanConfig toScanConfig() {
+            CxScanConfig config = new CxScanConfig();
+            config.setUrl(serverUrl);
+            config.setProjectName(projectName);
+            config.setTeamPath(teamPath);
+            config.setSynchronous(true);
+            config.setSastEnabled(true);
+            config.setDependencyScannerType(DependencyScannerType.NONE);
+            config.setSastThresholdsEnabled(Boolean.TRUE.equals(sastThresholdsEnabled));
+            config.setSastHighThreshold(sastHighThreshold);
+            config.setSastMediumThreshold(sastMediumThreshold);
+            config.setSastLowThreshold(sastLowThreshold);
+            return config;
+        }
+
+        String getId() {
+            return idOf(jobFullName, buildNumber);
+        }
+
+        void setCredentials(CxCredentials credentials) {
+            this.credentials = credentials;
+            this.key = new CxSessionPool.SessionKey(credentials, enableCertificateValidation);
+        }
+
+        /**
+         * Polls about four times during the expected remaining time of the scan, estimated from its progress so far.
+         * While the scan makes no progress, e.g. while it waits in the queue, the interval grows gradually.
+         */
+        void scheduleNextPoll(CxSastStatusClient.QueuedScan queued, long now) {
+            if (queued.totalPercent <= 0 || queued.totalPercent >= 100) {
+                pollInterval = pollInterval + pollInterval / 2;
+            } else if (progressSince == 0) {
+                progressSince = now;
+                progressSincePercent = queued.totalPercent;
+            } else if (queued.totalPercent > progressSincePercent) {
+                double millisPerPercent = (double) (now - progressSince) / (queued.totalPercent - progressSincePercent);
+                long remaining = (long) (millisPerPercent * (100 - queued.totalPercent));
+                pollInterval = remaining / 4;
+            }
+            pollInterval = Math.max(MIN_POLL_INTERVAL_MILLIS, Math.min(MAX_POLL_INTERVAL_MILLIS, pollInterval));
+            nextPollAt = now + pollInterval;
+        }
+
+        void backOff(long now) {
+            pollInterval = Math.max(MIN_POLL_INTERVAL_MILLIS, Math.min(MAX_POLL_INTERVAL_MILLIS, pollInterval * 2));
+            nextPollAt = now + pollInterval;
+        }
+
+        /**
+         * Transient fields are not initialized when the registry is read after a restart.
+         */
+        private Object readResolve() {
+            pollInterval = INITIAL_POLL_INTERVAL_MILLIS;
+            return this;
+        }
+
+        static String idOf(String jobFullName, int buildNumber) {
+            return jobFullName + "#" + buildNumber;
+        }
+
+        Run<?, ?> findRun() {
+            Job<?, ?> job = Jenkins.getInstance().getItemByFullName(jobFullName, Job.class);
+            return job != null ? job.getBuildByNumber(buildNumber) : null;
+        }
+    }
+}
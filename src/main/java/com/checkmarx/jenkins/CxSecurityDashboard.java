@@ -0,0 +1,524 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Current vulnerability counts of every job that uses Checkmarx, rolled up by folder, team and Checkmarx server, and the
+ * daily history of the instance totals. Shown by {@link CxDashboardLink}.
+ * <p>
+ * The counts of a job are those of its latest SAST and dependency scan results in its {@link CxTrendIndex}. They are
+ * updated by {@link CxRunListener} and {@link CxItemListener}, which also update the rollups by removing the previous
+ * counts of the job and adding the new ones, so that showing the page never goes through jobs or builds. The state is
+ * saved to {@code checkmarx-dashboard.bin} at most every {@link #SAVE_DELAY_SECONDS} seconds and when Jenkins stops.
+ * When that file does not exist yet, it is created once in the background from the trend index files that exist, without
+ * loading builds.
+ */
+class CxSecurityDashboard {
+
+    static final String FILE_NAME = "checkmarx-dashboard.bin";
+
+    private static final int MAGIC = 0x43584442;
+    private static final int VERSION = 1;
+    private static final int HISTORY_DAYS = 90;
+    private static final long SAVE_DELAY_SECONDS = 30;
+    private static final int SEED_PROGRESS_JOBS = 1000;
+
+    private static final CxSecurityDashboard INSTANCE = new CxSecurityDashboard();
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    private final Map<String, JobEntry> jobs = new HashMap<>();
+    private final Totals total = new Totals("");
+    private final Map<String, Totals> byFolder = new HashMap<>();
+    private final Map<String, Totals> byTeam = new HashMap<>();
+    private final Map<String, Totals> byServer = new HashMap<>();
+    // Instance totals at the end of each day, by day since the epoch.
+    private final TreeMap<Long, Totals> history = new TreeMap<>();
+    private boolean saveScheduled;
+    // Set while the state is created by seed(), a partial state is not saved.
+    private boolean seeding;
+
+    private CxSecurityDashboard() {
+    }
+
+    static CxSecurityDashboard getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Updates the counts of a job from its trend index.
+     *
+     * @param run the build that completed, whose team and server are recorded, or null to keep those of the job
+     */
+    void update(Job<?, ?> job, CxTrendIndex.Snapshot trend, Run<?, ?> run) {
+        JobEntry entry = JobEntry.create(job, trend);
+        CxScanResult result = run != null ? run.getAction(CxScanResult.class) : null;
+        synchronized (this) {
+            JobEntry previous = jobs.get(job.getFullName());
+            if (entry != null) {
+                if (result != null) {
+                    entry.team = result.getTeamPath();
+                    entry.server = result.getServerUrl();
+                } else if (previous != null) {
+                    entry.team = previous.team;
+                    entry.server = previous.server;
+                }
+            }
+            replace(job.getFullName(), entry);
+        }
+    }
+
+    /**
+     * Adds the counts of a job from its stored trend index while the dashboard is created. The index may have been
+     * read before a build of the job completed, so an entry of the same or a later build is kept.
+     */
+    private void seed(Job<?, ?> job, CxTrendIndex.Snapshot trend) {
+        JobEntry entry = JobEntry.create(job, trend);
+        if (entry == null) {
+            return;
+        }
+        synchronized (this) {
+            JobEntry current = jobs.get(job.getFullName());
+            if (current == null || current.build < entry.build) {
+                replace(job.getFullName(), entry);
+            }
+        }
+    }
+
+    synchronized void remove(String jobName) {
+        replace(jobName, null);
+    }
+
+    synchronized void rename(String oldName, String newName, String newFolder) {
+        JobEntry entry = jobs.get(oldName);
+        if (entry != null) {
+            replace(oldName, null);
+            entry.job = newName;
+            entry.folder = newFolder;
+            replace(newName, entry);
+        }
+    }
+
+    private void replace(String jobName, JobEntry entry) {
+        JobEntry previous = entry != null ? jobs.put(jobName, entry) : jobs.remove(jobName);
+        if (previous == null && entry == null) {
+            return;
+        }
+        if (previous != null) {
+            add(previous, -1);
+        }
+        if (entry != null) {
+            add(entry, 1);
+        }
+        long today = TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis());
+        history.put(today, total.copy(formatDay(today)));
+        while (history.size() > HISTORY_DAYS) {
+            history.pollFirstEntry();
+        }
+        scheduleSave();
+    }
+
+    private void add(JobEntry entry, int sign) {
+        total.add(entry, sign);
+        add(byFolder, entry.folder, entry, sign);
+        add(byTeam, entry.team, entry, sign);
+        add(byServer, entry.server, entry, sign);
+    }
+
+    private static void add(Map<String, Totals> groups, String name, JobEntry entry, int sign) {
+        String key = name != null ? name : "";
+        Totals totals = groups.get(key);
+        if (totals == null) {
+            totals = new Totals(key);
+            groups.put(key, totals);
+        }
+        totals.add(entry, sign);
+        if (totals.jobs == 0) {
+            groups.remove(key);
+        }
+    }
+
+    synchronized Totals getTotal() {
+        return total.copy("");
+    }
+
+    List<Totals> getByFolder() {
+        return sorted(byFolder);
+    }
+
+    List<Totals> getByTeam() {
+        return sorted(byTeam);
+    }
+
+    List<Totals> getByServer() {
+        return sorted(byServer);
+    }
+
+    /**
+     * @return the instance totals of the last {@link #HISTORY_DAYS} days with changes, most recent first
+     */
+    synchronized List<Totals> getHistory() {
+        List<Totals> days = new ArrayList<>(history.values());
+        Collections.reverse(days);
+        return days;
+    }
+
+    /**
+     * @return copies of the totals, most high severity results first
+     */
+    private synchronized List<Totals> sorted(Map<String, Totals> groups) {
+        List<Totals> copies = new ArrayList<>(groups.size());
+        for (Totals totals : groups.values()) {
+            copies.add(totals.copy(totals.name));
+        }
+        Collections.sort(copies, new Comparator<Totals>() {
+            @Override
+            public int compare(Totals a, Totals b) {
+                int compare = Long.compare(b.counts[CxTrendIndex.HIGH] + b.counts[CxTrendIndex.DEPENDENCY_HIGH],
+                        a.counts[CxTrendIndex.HIGH] + a.counts[CxTrendIndex.DEPENDENCY_HIGH]);
+                return compare != 0 ? compare : a.name.compareTo(b.name);
+            }
+        });
+        return copies;
+    }
+
+    /**
+     * Formats a day since the epoch, which is a day in UTC.
+     */
+    private static String formatDay(long day) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(TimeUnit.DAYS.toMillis(day)));
+    }
+
+    // /////////////////////////////////////////////////////////////////////////////////////////////////
+    // Persistence
+    // /////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void scheduleSave() {
+        if (saveScheduled) {
+            return;
+        }
+        saveScheduled = true;
+        Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    save();
+                } catch (IOException e) {
+                    serverLog.warn("Failed to save Checkmarx dashboard: " + e.getMessage());
+                }
+            }
+        }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes the state now, unless it is still being created.
+     */
+    synchronized void save() throws IOException {
+        saveScheduled = false;
+        if (seeding) {
+            return;
+        }
+        File file = getFile();
+        File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(jobs.size());
+            for (JobEntry entry : jobs.values()) {
+                out.writeUTF(entry.job);
+                out.writeUTF(nullToEmpty(entry.folder));
+                out.writeUTF(nullToEmpty(entry.team));
+                out.writeUTF(nullToEmpty(entry.server));
+                out.writeInt(entry.build);
+                out.writeLong(entry.timestamp);
+                writeCounts(out, entry.counts);
+            }
+            out.writeInt(history.size());
+            for (Map.Entry<Long, Totals> day : history.entrySet()) {
+                out.writeLong(day.getKey());
+                out.writeInt(day.getValue().jobs);
+                writeCounts(out, day.getValue().counts);
+            }
+        }
+        if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Failed to write " + file);
+        }
+    }
+
+    /**
+     * Reads the saved state, or creates it from the trend indexes of the jobs in the background if there is none.
+     */
+    synchronized void load() {
+        File file = getFile();
+        if (!file.exists()) {
+            seeding = true;
+            Timer.get().submit(new Runnable() {
+                @Override
+                public void run() {
+                    seed();
+                }
+            });
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported dashboard format");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                JobEntry entry = new JobEntry(in.readUTF());
+                entry.folder = in.readUTF();
+                entry.team = emptyToNull(in.readUTF());
+                entry.server = emptyToNull(in.readUTF());
+                entry.build = in.readInt();
+                entry.timestamp = in.readLong();
+                readCounts(in, entry.counts);
+                jobs.put(entry.job, entry);
+                add(entry, 1);
+            }
+            int days = in.readInt();
+            for (int i = 0; i < days; i++) {
+                long day = in.readLong();
+                Totals totals = new Totals(formatDay(day));
+                totals.jobs = in.readInt();
+                readCounts(in, totals.counts);
+                history.put(day, totals);
+            }
+        } catch (IOException e) {
+            serverLog.warn("Failed to read Checkmarx dashboard, it will be created again: " + e.getMessage());
+            jobs.clear();
+            total.clear();
+            byFolder.clear();
+            byTeam.clear();
+            byServer.clear();
+            history.clear();
+            file.delete();
+            load();
+        }
+    }
+
+    /**
+     * Loads the counts of every job that has a trend index file, once. Jobs without one and their builds are not
+     * loaded, and an index is not rebuilt. The team and server of a job are known from its next build.
+     */
+    private void seed() {
+        long start = System.currentTimeMillis();
+        int visited = 0;
+        int count = 0;
+        try {
+            for (Job<?, ?> job : Jenkins.getInstance().getAllItems(Job.class)) {
+                if (++visited % SEED_PROGRESS_JOBS == 0) {
+                    serverLog.info(String.format("Creating Checkmarx dashboard: %d jobs checked, %d with results, %d ms",
+                            visited, count, System.currentTimeMillis() - start));
+                }
+                try {
+                    CxTrendIndex.Snapshot trend = CxTrendIndex.forJob(job).readStored();
+                    if (trend != null && trend.size() > 0) {
+                        seed(job, trend);
+                        count++;
+                    }
+                } catch (IOException e) {
+                    serverLog.warn("Failed to read Checkmarx trend index of " + job.getFullName() + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            synchronized (this) {
+                seeding = false;
+            }
+        }
+        try {
+            save();
+        } catch (IOException e) {
+            serverLog.warn("Failed to save Checkmarx dashboard: " + e.getMessage());
+        }
+        serverLog.info(String.format("Created Checkmarx dashboard from %d of %d jobs in %d ms",
+                count, visited, System.currentTimeMillis() - start));
+    }
+
+    private static File getFile() {
+        return new File(Jenkins.getInstance().getRootDir(), FILE_NAME);
+    }
+
+    private static void writeCounts(DataOutputStream out, long[] counts) throws IOException {
+        for (long count : counts) {
+            out.writeLong(count);
+        }
+    }
+
+    private static void readCounts(DataInputStream in, long[] counts) throws IOException {
+        for (int column = 0; column < counts.length; column++) {
+            counts[column] = in.readLong();
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    static String getFolder(Job<?, ?> job) {
+        ItemGroup<?> parent = job.getParent();
+        return parent instanceof Item ? ((Item) parent).getFullName() : "";
+    }
+
+    /**
+     * The current counts of one job.
+     */
+    private static class JobEntry {
+
+        private String job;
+        private String folder;
+        private String team;
+        private String server;
+        private int build;
+        private long timestamp;
+        private final long[] counts = new long[CxTrendIndex.COLUMNS];
+
+        private JobEntry(String job) {
+            this.job = job;
+        }
+
+        /**
+         * @return the counts of the latest SAST and dependency scan results of the job, or null if it has none
+         */
+        static JobEntry create(Job<?, ?> job, CxTrendIndex.Snapshot trend) {
+            int sast = findLast(trend, CxTrendIndex.FLAG_SAST);
+            int dependencyScan = findLast(trend, CxTrendIndex.FLAG_DEPENDENCY_SCAN);
+            if (sast < 0 && dependencyScan < 0) {
+                return null;
+            }
+            JobEntry entry = new JobEntry(job.getFullName());
+            entry.folder = getFolder(job);
+            int last = Math.max(sast, dependencyScan);
+            entry.build = trend.getNumber(last);
+            entry.timestamp = trend.getTimestamp(last);
+            if (sast >= 0) {
+                for (int column = CxTrendIndex.HIGH; column <= CxTrendIndex.INFO; column++) {
+                    entry.counts[column] = trend.getCount(sast, column);
+                }
+            }
+            if (dependencyScan >= 0) {
+                for (int column = CxTrendIndex.DEPENDENCY_HIGH; column <= CxTrendIndex.DEPENDENCY_LOW; column++) {
+                    entry.counts[column] = trend.getCount(dependencyScan, column);
+                }
+            }
+            return entry;
+        }
+
+        /**
+         * Asynchronous scans have no counts, they are skipped.
+         */
+        private static int findLast(CxTrendIndex.Snapshot trend, int flag) {
+            for (int i = trend.size() - 1; i >= 0; i--) {
+                if (trend.hasFlag(i, flag) && !trend.isAsynchronous(i)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Sums of the current counts of a group of jobs.
+     */
+    public static class Totals {
+
+        private final String name;
+        private int jobs;
+        private final long[] counts = new long[CxTrendIndex.COLUMNS];
+
+        private Totals(String name) {
+            this.name = name;
+        }
+
+        private void add(JobEntry entry, int sign) {
+            jobs += sign;
+            for (int column = 0; column < counts.length; column++) {
+                counts[column] += sign * entry.counts[column];
+            }
+        }
+
+        private Totals copy(String copyName) {
+            Totals copy = new Totals(copyName);
+            copy.jobs = jobs;
+            System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+            return copy;
+        }
+
+        private void clear() {
+            jobs = 0;
+            for (int column = 0; column < counts.length; column++) {
+                counts[column] = 0;
+            }
+        }
+
+        /**
+         * @return the folder, team, server or day, empty for jobs without one
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getJobs() {
+            return jobs;
+        }
+
+        public long getHigh() {
+            return counts[CxTrendIndex.HIGH];
+        }
+
+        public long getMedium() {
+            return counts[CxTrendIndex.MEDIUM];
+        }
+
+        public long getLow() {
+            return counts[CxTrendIndex.LOW];
+        }
+
+        public long getInfo() {
+            return counts[CxTrendIndex.INFO];
+        }
+
+        public long getDependencyHigh() {
+            return counts[CxTrendIndex.DEPENDENCY_HIGH];
+        }
+
+        public long getDependencyMedium() {
+            return counts[CxTrendIndex.DEPENDENCY_MEDIUM];
+        }
+
+        public long getDependencyLow() {
+            return counts[CxTrendIndex.DEPENDENCY_LOW];
+        }
+    }
+}
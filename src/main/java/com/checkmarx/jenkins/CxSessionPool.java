@@ -0,0 +1,394 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.exception.CxClientException;
+import com.cx.restclient.sca.dto.SCAConfig;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps logged-in {@link CxShragaClient} instances so that repeated calls against the same Checkmarx server
+ * reuse the access token and the underlying HTTP connections instead of performing a full login every time.
+ * <p>
+ * Sessions are keyed by server URL, username and certificate validation mode. A fingerprint of the password is
+ * part of the key as well, so that a session is never handed out to a caller that did not provide the same credentials.
+ * A session is used by one caller at a time: {@link #lease} takes it out of the pool and {@link Session#close()}
+ * returns it.
+ * <p>
+ * Scans lease sessions with {@link #leaseForScan}, whose clients are initialized for one project. Those sessions are
+ * also keyed by the settings that {@link CxShragaClient#init()} resolves on the server, so that consecutive builds of
+ * a job skip the login and the team, preset and project lookups.
+ */
+class CxSessionPool {
+
+    private static final String PROPERTY_PREFIX = CxSessionPool.class.getName();
+
+    // CxSAST access tokens are valid for one hour by default.
+    private static final long TOKEN_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(PROPERTY_PREFIX + ".tokenLifetimeMinutes", 60));
+    private static final long TOKEN_REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(
+            Integer.getInteger(PROPERTY_PREFIX + ".maxIdleMinutes", 10));
+    private static final int MAX_IDLE_SESSIONS_PER_KEY = Integer.getInteger(PROPERTY_PREFIX + ".maxIdlePerServer", 4);
+
+    private static final CxSessionPool INSTANCE = new CxSessionPool();
+
+    private final ConcurrentMap<SessionKey, Deque<Session>> idleSessions = new ConcurrentHashMap<>();
+    // Incremented by clear(), sessions of an older generation are not returned to the pool.
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    static CxSessionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a logged-in session for the given credentials. The caller must close the returned session
+     * when done, so that it can be reused by others.
+     */
+    Session lease(CxCredentials credentials, boolean enableCertificateValidation, Logger log)
+            throws IOException, CxClientException {
+        SessionKey key = new SessionKey(credentials, enableCertificateValidation);
+        Session session = pollIdle(key, log);
+        if (session != null) {
+            return session;
+        }
+
+        misses.incrementAndGet();
+        log.debug("Creating Checkmarx session for " + key + ". " + getStatistics());
+        CxShragaClient client = CommonClientFactory.getInstance(credentials, enableCertificateValidation, log);
+        session = new Session(key, client, null);
+        try {
+            client.login();
+        } catch (CxClientException | RuntimeException e) {
+            client.close();
+            throw e;
+        }
+        session.loggedInAt = System.currentTimeMillis();
+        return session;
+    }
+
+    /**
+     * Returns a session whose client is initialized for the project of the given scan configuration. Each session has
+     * its own copy of the configuration, which its client keeps: the settings of the given configuration are copied
+     * into it, except for those that {@link CxShragaClient#init()} resolved. Callers must use
+     * {@link Session#getConfig()} from then on, and close the session when done.
+     */
+    Session leaseForScan(CxScanConfig config, Logger log) throws IOException, CxClientException {
+        SessionKey key = new SessionKey(config);
+        Session session;
+        while ((session = pollIdle(key, log)) != null) {
+            try {
+                PropertyUtils.copyProperties(session.config, config);
+                for (Map.Entry<String, Object> resolved : session.resolved.entrySet()) {
+                    PropertyUtils.setProperty(session.config, resolved.getKey(), resolved.getValue());
+                }
+                return session;
+            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+                log.debug("Failed to apply the scan configuration to a pooled Checkmarx session: " + e.getMessage());
+                discard(session);
+            }
+        }
+
+        misses.incrementAndGet();
+        log.debug("Creating Checkmarx session for " + key + ". " + getStatistics());
+        // Later leases of the session change its configuration, so it is not shared with the caller.
+        CxScanConfig sessionConfig = copyOf(config);
+        CxShragaClient client = CommonClientFactory.getInstance(sessionConfig, log);
+        session = new Session(key, client, sessionConfig);
+        try {
+            Map<String, Object> before = describe(sessionConfig);
+            client.init();
+            for (Map.Entry<String, Object> property : describe(sessionConfig).entrySet()) {
+                String name = property.getKey();
+                if (!Objects.equals(before.get(name), property.getValue()) && PropertyUtils.isWriteable(sessionConfig, name)) {
+                    session.resolved.put(name, property.getValue());
+                }
+            }
+        } catch (CxClientException | IOException | RuntimeException e) {
+            client.close();
+            throw e;
+        }
+        session.loggedInAt = System.currentTimeMillis();
+        return session;
+    }
+
+    private static CxScanConfig copyOf(CxScanConfig config) throws IOException {
+        CxScanConfig copy = new CxScanConfig();
+        try {
+            PropertyUtils.copyProperties(copy, config);
+        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            throw new IOException("Failed to copy the scan configuration: " + e.getMessage(), e);
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> describe(CxScanConfig config) throws IOException {
+        try {
+            return new HashMap<String, Object>(PropertyUtils.describe(config));
+        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            throw new IOException("Failed to read the scan configuration: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return an idle session for the key with a valid token, or null if there is none
+     */
+    private Session pollIdle(SessionKey key, Logger log) throws CxClientException {
+        long now = System.currentTimeMillis();
+        Deque<Session> idle = idleSessions.get(key);
+        Session session;
+        while (idle != null && (session = idle.pollFirst()) != null) {
+            if (now - session.lastUsed > MAX_IDLE_MILLIS) {
+                discard(session);
+                continue;
+            }
+
+            hits.incrementAndGet();
+            log.debug("Reusing Checkmarx session for " + key + ". " + getStatistics());
+            if (now - session.loggedInAt > TOKEN_LIFETIME_MILLIS - TOKEN_REFRESH_MARGIN_MILLIS) {
+                refresh(session, log);
+            }
+            return session;
+        }
+        return null;
+    }
+
+    /**
+     * Closes all idle sessions, e.g. when the global server configuration has changed. Sessions that are leased at
+     * that time are closed when they are returned.
+     */
+    void clear() {
+        generation.incrementAndGet();
+        for (Deque<Session> idle : idleSessions.values()) {
+            Session session;
+            while ((session = idle.pollFirst()) != null) {
+                discard(session);
+            }
+        }
+    }
+
+    String getStatistics() {
+        return String.format("Session pool hits: %d, misses: %d, token refreshes: %d, evictions: %d",
+                hits.get(), misses.get(), refreshes.get(), evictions.get());
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getRefreshes() {
+        return refreshes.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    private void refresh(Session session, Logger log) throws CxClientException {
+        log.debug("Checkmarx access token for " + session.key + " is about to expire, logging in again.");
+        try {
+            session.client.login();
+        } catch (CxClientException | RuntimeException e) {
+            discard(session);
+            throw e;
+        }
+        session.loggedInAt = System.currentTimeMillis();
+        refreshes.incrementAndGet();
+    }
+
+    private void release(Session session) {
+        if (session.failed || session.generation != generation.get()) {
+            discard(session);
+            return;
+        }
+
+        session.lastUsed = System.currentTimeMillis();
+        Deque<Session> idle = idleSessions.get(session.key);
+        if (idle == null) {
+            Deque<Session> created = new ConcurrentLinkedDeque<>();
+            idle = idleSessions.putIfAbsent(session.key, created);
+            if (idle == null) {
+                idle = created;
+            }
+        }
+        idle.offerFirst(session);
+
+        // Most recently used sessions are kept at the head, so the tail holds the ones to drop.
+        while (idle.size() > MAX_IDLE_SESSIONS_PER_KEY) {
+            Session oldest = idle.pollLast();
+            if (oldest == null) {
+                break;
+            }
+            discard(oldest);
+        }
+        evictExpired(idle);
+    }
+
+    private void evictExpired(Deque<Session> idle) {
+        long now = System.currentTimeMillis();
+        Iterator<Session> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (now - session.lastUsed > MAX_IDLE_MILLIS && idle.removeFirstOccurrence(session)) {
+                discard(session);
+            }
+        }
+    }
+
+    private void discard(Session session) {
+        evictions.incrementAndGet();
+        try {
+            session.client.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * A logged-in client leased from the pool.
+     */
+    class Session implements Closeable {
+        private final SessionKey key;
+        private final CxShragaClient client;
+        private final CxScanConfig config;
+        // Settings of the configuration that init() resolved on the server, kept when the session is reused.
+        private final Map<String, Object> resolved = new HashMap<>();
+        private final int generation = CxSessionPool.this.generation.get();
+        private volatile long loggedInAt;
+        private volatile long lastUsed;
+        private boolean failed;
+
+        private Session(SessionKey key, CxShragaClient client, CxScanConfig config) {
+            this.key = key;
+            this.client = client;
+            this.config = config;
+        }
+
+        CxShragaClient getClient() {
+            return client;
+        }
+
+        /**
+         * @return the configuration the client of a scan session was created with, or null for other sessions
+         */
+        CxScanConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * Marks the session as unusable, e.g. after the server rejected a request. The session is closed instead
+         * of being returned to the pool.
+         */
+        void markFailed() {
+            failed = true;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    static class SessionKey {
+        private final String serverUrl;
+        private final String username;
+        private final String passwordFingerprint;
+        private final boolean enableCertificateValidation;
+        // Settings resolved by CxShragaClient.init(), empty for sessions that are not bound to a project.
+        private final String scope;
+
+        SessionKey(CxCredentials credentials, boolean enableCertificateValidation) {
+            this(credentials.getServerUrl(), credentials.getUsername(), credentials.getPassword(),
+                    enableCertificateValidation, "");
+        }
+
+        SessionKey(CxScanConfig config) {
+            this(config.getUrl(), config.getUsername(), config.getPassword(), !config.isDisableCertificateValidation(),
+                    getScope(config));
+        }
+
+        private SessionKey(String serverUrl, String username, String password, boolean enableCertificateValidation,
+                           String scope) {
+            this.serverUrl = StringUtils.removeEnd(StringUtils.trimToEmpty(serverUrl), "/").toLowerCase();
+            this.username = StringUtils.defaultString(username);
+            this.passwordFingerprint = DigestUtils.sha256Hex(StringUtils.defaultString(password));
+            this.enableCertificateValidation = enableCertificateValidation;
+            this.scope = scope;
+        }
+
+        private static String getScope(CxScanConfig config) {
+            SCAConfig sca = config.getScaConfig();
+            return DigestUtils.sha256Hex(StringUtils.join(new Object[]{
+                    config.getProjectName(), config.getTeamPath(), config.getTeamId(), config.getPresetId(),
+                    config.getEngineConfigurationId(), config.getSastEnabled(), config.getDependencyScannerType(),
+                    config.getDenyProject(), config.getCxOrigin(),
+                    sca != null ? sca.getApiUrl() : null, sca != null ? sca.getAccessControlUrl() : null,
+                    sca != null ? sca.getTenant() : null, sca != null ? sca.getUsername() : null,
+                    sca != null ? DigestUtils.sha256Hex(StringUtils.defaultString(sca.getPassword())) : null
+            }, '\n'));
+        }
+
+        String getServerUrl() {
+            return serverUrl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SessionKey)) {
+                return false;
+            }
+            SessionKey other = (SessionKey) o;
+            return enableCertificateValidation == other.enableCertificateValidation &&
+                    serverUrl.equals(other.serverUrl) &&
+                    username.equals(other.username) &&
+                    passwordFingerprint.equals(other.passwordFingerprint) &&
+                    scope.equals(other.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = serverUrl.hashCode();
+            result = 31 * result + username.hashCode();
+            result = 31 * result + passwordFingerprint.hashCode();
+            result = 31 * result + (enableCertificateValidation ? 1 : 0);
+            result = 31 * result + scope.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + serverUrl + ", " + username + (enableCertificateValidation ? "" : ", no certificate validation")
+                    + (scope.isEmpty() ? "" : ", project scope") + "]";
+        }
+    }
+}
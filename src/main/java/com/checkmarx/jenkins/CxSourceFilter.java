@@ -0,0 +1,147 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Decides which workspace files are sent to CxSAST, based on the job's filter pattern and folder exclusions.
+ * <p>
+ * The filter pattern is a comma separated list of Ant-style globs relative to the workspace, e.g.
+ * {@code !**}{@code /*.class, !**}{@code /node_modules/**}{@code /*}. Patterns that start with '!' exclude files,
+ * the others include them. When there are no include patterns, all files are included.
+ * Folder exclusions are folder names that are excluded wherever they appear in the tree.
+ * Both are compiled once into a {@link CxPathMatcher}.
+ */
+class CxSourceFilter {
+
+    private final CxPathMatcher includes;
+    private final CxPathMatcher excludes;
+
+    CxSourceFilter(String filterPattern, String folderExclusions) {
+        List<String> includeGlobs = new ArrayList<>();
+        List<String> excludeGlobs = new ArrayList<>();
+        for (String pattern : split(filterPattern)) {
+            if (pattern.startsWith("!")) {
+                excludeGlobs.add(normalize(pattern.substring(1)));
+            } else {
+                includeGlobs.add(normalize(pattern));
+            }
+        }
+        for (String folder : split(folderExclusions)) {
+            String normalized = StringUtils.removeEnd(normalize(folder), "/");
+            excludeGlobs.add(normalized.indexOf('/') < 0 ? "**/" + normalized + "/**" : normalized + "/**");
+        }
+        includes = CxPathMatcher.compile(includeGlobs);
+        excludes = CxPathMatcher.compile(excludeGlobs);
+    }
+
+    /**
+     * @param relativePath path of a directory relative to the workspace, with '/' separators
+     * @return whether the whole directory can be skipped
+     */
+    boolean isExcludedDirectory(String relativePath) {
+        return excludes.matchesDirectory(relativePath);
+    }
+
+    /**
+     * @param relativePath path of a file relative to the workspace, with '/' separators
+     */
+    boolean isIncluded(String relativePath) {
+        return !excludes.matches(relativePath) && (includes.isEmpty() || includes.matches(relativePath));
+    }
+
+    /**
+     * Lists the files under the given directory that pass the filter. The tree is walked by the given pool,
+     * one task per directory, and excluded directories are not entered.
+     */
+    List<SourceFile> listFiles(File dir, ForkJoinPool pool) {
+        return pool.invoke(new DirectoryScan(dir, ""));
+    }
+
+    private static List<String> split(String value) {
+        List<String> result = new ArrayList<>();
+        if (StringUtils.isBlank(value)) {
+            return result;
+        }
+        for (String item : value.split(",")) {
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+
+    private static String normalize(String pattern) {
+        return StringUtils.removeStart(pattern.trim().replace('\\', '/'), "/");
+    }
+
+    /**
+     * A file that passed the filter, with its path relative to the scanned directory.
+     */
+    static class SourceFile {
+        private final File file;
+        private final String path;
+
+        private SourceFile(File file, String path) {
+            this.file = file;
+            this.path = path;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        String getPath() {
+            return path;
+        }
+    }
+
+    /**
+     * Lists the files of one directory and forks a task for each of its subdirectories.
+     */
+    private class DirectoryScan extends RecursiveTask<List<SourceFile>> {
+        private final File dir;
+        private final String relativePath;
+
+        private DirectoryScan(File dir, String relativePath) {
+            this.dir = dir;
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        protected List<SourceFile> compute() {
+            List<SourceFile> result = new ArrayList<>();
+            File[] children = dir.listFiles();
+            if (children == null) {
+                return result;
+            }
+
+            List<DirectoryScan> subdirectories = new ArrayList<>();
+            for (File child : children) {
+                String childPath = relativePath.isEmpty() ? child.getName() : relativePath + "/" + child.getName();
+                if (child.isDirectory()) {
+                    // Linked directories are skipped, a link to a parent directory would make the walk endless.
+                    if (!isExcludedDirectory(childPath) && !Files.isSymbolicLink(child.toPath())) {
+                        DirectoryScan task = new DirectoryScan(child, childPath);
+                        task.fork();
+                        subdirectories.add(task);
+                    }
+                } else if (isIncluded(childPath)) {
+                    result.add(new SourceFile(child, childPath));
+                }
+            }
+
+            for (DirectoryScan task : subdirectories) {
+                result.addAll(task.join());
+            }
+            return result;
+        }
+    }
+}
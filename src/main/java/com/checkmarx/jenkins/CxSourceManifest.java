@@ -0,0 +1,138 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Path, size and content hash of every file that would be sent to CxSAST, together with a fingerprint of the
+ * scan settings. Two builds with the same manifest digest would submit identical scans.
+ * <p>
+ * The manifest is stored gzipped in the build's checkmarx directory. Its first line holds the digest, so that
+ * comparing two builds does not require reading the whole file.
+ */
+class CxSourceManifest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String FILE_NAME = "sourceManifest.txt.gz";
+    private static final String DIGEST_PREFIX = "# digest: ";
+
+    private final String digest;
+    private final int fileCount;
+    private final byte[] content;
+
+    private CxSourceManifest(String digest, int fileCount, byte[] content) {
+        this.digest = digest;
+        this.fileCount = fileCount;
+        this.content = content;
+    }
+
+    /**
+     * Hashes the files of the source directory that pass the filter.
+     *
+     * @param settingsFingerprint scan settings that must also be equal for two scans to be considered identical
+     */
+    static CxSourceManifest compute(File sourceDir, CxSourceFilter filter, String settingsFingerprint, ForkJoinPool pool)
+            throws IOException, InterruptedException {
+        List<CxSourceFilter.SourceFile> files = filter.listFiles(sourceDir, pool);
+
+        List<Callable<String>> tasks = new ArrayList<>(files.size());
+        for (final CxSourceFilter.SourceFile file : files) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    try (InputStream in = new FileInputStream(file.getFile())) {
+                        return file.getPath() + '\t' + file.getFile().length() + '\t' + DigestUtils.sha256Hex(in);
+                    }
+                }
+            });
+        }
+
+        List<String> lines = new ArrayList<>(files.size());
+        try {
+            for (Future<String> entry : pool.invokeAll(tasks)) {
+                lines.add(entry.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Failed to hash sources: " + cause.getMessage(), cause);
+        }
+        Collections.sort(lines);
+
+        MessageDigest sha256 = DigestUtils.getSha256Digest();
+        sha256.update(settingsFingerprint.getBytes(StandardCharsets.UTF_8));
+        for (String line : lines) {
+            sha256.update(line.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) '\n');
+        }
+        String digest = Hex.encodeHexString(sha256.digest());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            writer.write(DIGEST_PREFIX + digest + '\n');
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        return new CxSourceManifest(digest, lines.size(), bytes.toByteArray());
+    }
+
+    String getDigest() {
+        return digest;
+    }
+
+    int getFileCount() {
+        return fileCount;
+    }
+
+    void save(File checkmarxBuildDir) throws IOException {
+        if (!checkmarxBuildDir.isDirectory() && !checkmarxBuildDir.mkdirs()) {
+            throw new IOException("Failed to create " + checkmarxBuildDir);
+        }
+        try (OutputStream out = new FileOutputStream(new File(checkmarxBuildDir, FILE_NAME))) {
+            out.write(content);
+        }
+    }
+
+    /**
+     * @return the digest of the manifest stored in the given build directory, or null if there is none
+     */
+    static String readDigest(File checkmarxBuildDir) {
+        File file = new File(checkmarxBuildDir, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            return line != null && line.startsWith(DIGEST_PREFIX) ? line.substring(DIGEST_PREFIX.length()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
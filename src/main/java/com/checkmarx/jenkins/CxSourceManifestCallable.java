@@ -0,0 +1,43 @@
+package com.checkmarx.jenkins;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import org.jenkinsci.remoting.RoleChecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Computes the {@link CxSourceManifest} of the workspace, possibly on a remote agent.
+ */
+class CxSourceManifestCallable implements FilePath.FileCallable<CxSourceManifest>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String filterPattern;
+    private final String folderExclusions;
+    private final String settingsFingerprint;
+
+    CxSourceManifestCallable(String filterPattern, String folderExclusions, String settingsFingerprint) {
+        this.filterPattern = filterPattern;
+        this.folderExclusions = folderExclusions;
+        this.settingsFingerprint = settingsFingerprint;
+    }
+
+    @Override
+    public CxSourceManifest invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return CxSourceManifest.compute(file, new CxSourceFilter(filterPattern, folderExclusions), settingsFingerprint, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+
+    }
+}
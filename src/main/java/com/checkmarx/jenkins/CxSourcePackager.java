@@ -0,0 +1,103 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+
+/**
+ * Packs the workspace sources for a CxSAST scan. The tree is walked by a fork-join pool (see
+ * {@link CxSourceFilter#listFiles}) and the files are compressed in parallel on the same pool, so packing a large
+ * workspace is no longer limited by a single deflate thread.
+ */
+class CxSourcePackager {
+
+    private static final String PROPERTY_PREFIX = CxSourcePackager.class.getName();
+    private static final int PARALLELISM = Integer.getInteger(PROPERTY_PREFIX + ".parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    private final CxSourceFilter filter;
+    private final Logger log;
+
+    CxSourcePackager(CxSourceFilter filter, Logger log) {
+        this.filter = filter;
+        this.log = log;
+    }
+
+    /**
+     * Packs the files of the source directory that pass the filter into the given zip file.
+     */
+    void pack(File sourceDir, File zipFile) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            long start = System.currentTimeMillis();
+            List<CxSourceFilter.SourceFile> files = filter.listFiles(sourceDir, pool);
+            long totalBytes = 0;
+            for (CxSourceFilter.SourceFile file : files) {
+                totalBytes += file.getFile().length();
+            }
+            long scanned = System.currentTimeMillis();
+            log.info(String.format("Found %d source files (%s) in %d ms.", files.size(),
+                    FileUtils.byteCountToDisplaySize(totalBytes), scanned - start));
+
+            ParallelScatterZipCreator creator = new ParallelScatterZipCreator(pool);
+            for (CxSourceFilter.SourceFile file : files) {
+                ZipArchiveEntry entry = new ZipArchiveEntry(file.getPath());
+                entry.setMethod(ZipEntry.DEFLATED);
+                entry.setTime(file.getFile().lastModified());
+                entry.setUnixMode(UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM);
+                creator.addArchiveEntry(entry, new SourceFileSupplier(file.getFile()));
+            }
+
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zipFile)) {
+                creator.writeTo(out);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new IOException("Failed to compress sources: " + cause.getMessage(), cause);
+            }
+            long packed = System.currentTimeMillis();
+
+            log.info(String.format("Compressed sources to %s in %d ms (%s/s, %d threads).",
+                    FileUtils.byteCountToDisplaySize(zipFile.length()), packed - scanned,
+                    FileUtils.byteCountToDisplaySize(throughput(totalBytes, packed - scanned)), PARALLELISM));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static long throughput(long bytes, long millis) {
+        return millis == 0 ? bytes : bytes * 1000 / millis;
+    }
+
+    private static class SourceFileSupplier implements InputStreamSupplier {
+        private final File file;
+
+        private SourceFileSupplier(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public InputStream get() {
+            try {
+                return new BufferedInputStream(new FileInputStream(file));
+            } catch (IOException e) {
+                // Fails the packing, the scan must not silently cover a partial source tree.
+                throw new UncheckedIOException("Failed to read source file " + file + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import jenkins.model.TransientActionFactory;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Serves the per-build SAST and dependency scan counts of a job as JSON at {@code job/<name>/checkmarx-trend/}, see
+ * {@link CxTrendJson}. Unlike {@link CxProjectResult}, it is available for every type of job, including Pipeline jobs,
+ * once the job has a {@link CxTrendIndex}.
+ */
+public class CxTrendAction implements Action {
+
+    private final Job<?, ?> job;
+
+    CxTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "checkmarx-trend";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        new CxTrendJson(job).serve(req, rsp);
+    }
+
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        /**
+         * Only jobs with an index get the action, so that requests for other jobs do not create one from their builds.
+         * The index is created when the first build with Checkmarx results completes.
+         */
+        @Nonnull
+        @Override
+        public Collection<? extends Action> createFor(@Nonnull Job target) {
+            if (!new File(target.getRootDir(), CxTrendIndex.FILE_NAME).isFile()) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new CxTrendAction(target));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Job;
+import hudson.util.Area;
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.imageio.ImageIO;
+import javax.servlet.ServletOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the rendered trend graphs of the jobs, so that the image and the clickable map of a job page come from one
+ * rendering, and later views of the page do not render again.
+ * <p>
+ * Graphs are keyed by job, the state of its {@link CxTrendIndex}, trend window, size and link prefix. A graph is
+ * dropped when a build of its job completes or is deleted, see {@link CxRunListener}. At most 256 graphs are kept, see
+ * the {@code com.checkmarx.jenkins.CxTrendChartCache.maxEntries} system property.
+ */
+class CxTrendChartCache {
+
+    private static final int MAX_ENTRIES = Integer.getInteger(CxTrendChartCache.class.getName() + ".maxEntries", 256);
+
+    private static final CxTrendChartCache INSTANCE = new CxTrendChartCache();
+
+    // Access ordered, the least recently viewed graph comes first.
+    private final LinkedHashMap<String, Chart> entries = new LinkedHashMap<String, Chart>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Chart> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private CxTrendChartCache() {
+    }
+
+    static CxTrendChartCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the graph for the given trend, which is not rendered yet if it was not requested before
+     */
+    synchronized Chart get(Job<?, ?> job, CxTrendIndex.Snapshot trend, String window, Area size, String relPath) {
+        int last = trend.size() - 1;
+        String key = getKeyPrefix(job) + (last >= 0 ? trend.getNumber(last) : 0) + '/' + trend.size()
+                + '/' + window + '/' + size.width + 'x' + size.height + '/' + relPath;
+        Chart chart = entries.get(key);
+        if (chart == null) {
+            chart = new Chart(size);
+            entries.put(key, chart);
+        }
+        return chart;
+    }
+
+    synchronized void invalidate(Job<?, ?> job) {
+        String prefix = getKeyPrefix(job);
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String getKeyPrefix(Job<?, ?> job) {
+        return job.getFullName() + '\n';
+    }
+
+    /**
+     * The image and the clickable map of one rendering of a graph. Callers render it while holding its lock, so that
+     * concurrent requests for the same graph wait for one rendering. Once rendered it does not change.
+     */
+    static class Chart {
+
+        private final Area size;
+        private volatile byte[] png;
+        private volatile String map;
+
+        private Chart(Area size) {
+            this.size = size;
+        }
+
+        boolean isRendered() {
+            return png != null;
+        }
+
+        synchronized void render(JFreeChart chart) throws IOException {
+            ChartRenderingInfo info = new ChartRenderingInfo();
+            BufferedImage image = chart.createBufferedImage(size.width, size.height, info);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "PNG", out);
+            map = ChartUtilities.getImageMap("map", info);
+            // Set last, readers check it.
+            png = out.toByteArray();
+        }
+
+        void writePng(StaplerResponse rsp) throws IOException {
+            rsp.setContentType("image/png");
+            rsp.setContentLength(png.length);
+            ServletOutputStream out = rsp.getOutputStream();
+            out.write(png);
+            out.flush();
+        }
+
+        void writeMap(StaplerResponse rsp) throws IOException {
+            rsp.setContentType("text/plain;charset=UTF-8");
+            PrintWriter writer = rsp.getWriter();
+            writer.println(map);
+            writer.flush();
+        }
+    }
+}
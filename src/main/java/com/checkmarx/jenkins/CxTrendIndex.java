@@ -0,0 +1,547 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-job index of the vulnerability counts of every build with Checkmarx results, so that trends can be shown
+ * without loading the builds.
+ * <p>
+ * The index is a small file in the job directory with one fixed-size record per build, appended by
+ * {@link CxRunListener} when a build completes. It is created from the build history the first time it is needed,
+ * and rewritten when a build is deleted:
+ * <pre>
+ * header      magic, version (2 ints)
+ * record      build number (int), timestamp (long), flags (int), counts (int[{@link #COLUMNS}])
+ * </pre>
+ * Records may be out of order when builds complete out of order. If a build number appears twice, the last record
+ * wins. The records are read into a sorted {@link Snapshot}, which is kept in memory as long as there is no memory
+ * pressure and only reads the records appended since.
+ */
+class CxTrendIndex {
+
+    static final String FILE_NAME = "checkmarx-trend.idx";
+
+    static final int MAGIC = 0x43585452;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+
+    static final int HIGH = 0;
+    static final int MEDIUM = 1;
+    static final int LOW = 2;
+    static final int INFO = 3;
+    static final int DEPENDENCY_HIGH = 4;
+    static final int DEPENDENCY_MEDIUM = 5;
+    static final int DEPENDENCY_LOW = 6;
+    static final int COLUMNS = 7;
+
+    static final int RECORD_SIZE = 4 + 8 + 4 + COLUMNS * 4;
+
+    static final int FLAG_SAST = 1;
+    static final int FLAG_DEPENDENCY_SCAN = 2;
+    static final int FLAG_ASYNCHRONOUS = 4;
+    static final int FLAG_REUSED = 8;
+
+    private static final Map<File, CxTrendIndex> indexes = new HashMap<>();
+    private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
+
+    private final Job<?, ?> job;
+    private final File file;
+    private SoftReference<Snapshot> snapshot;
+    private long loadedLength;
+
+    private CxTrendIndex(Job<?, ?> job) {
+        this.job = job;
+        this.file = new File(job.getRootDir(), FILE_NAME);
+    }
+
+    static synchronized CxTrendIndex forJob(Job<?, ?> job) {
+        File rootDir = job.getRootDir();
+        CxTrendIndex index = indexes.get(rootDir);
+        if (index == null || index.job != job) {
+            index = new CxTrendIndex(job);
+            indexes.put(rootDir, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drops the indexes kept for the given job, or for the jobs in the given folder, once it was deleted or moved.
+     * Indexes of jobs that were moved away from their directory are dropped as well.
+     */
+    static synchronized void forget(Item item) {
+        File rootDir = item.getRootDir();
+        String prefix = rootDir.getPath() + File.separator;
+        Iterator<Map.Entry<File, CxTrendIndex>> iterator = indexes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<File, CxTrendIndex> entry = iterator.next();
+            File dir = entry.getKey();
+            if (dir.equals(rootDir) || dir.getPath().startsWith(prefix) || !dir.equals(entry.getValue().job.getRootDir())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the records of all builds with Checkmarx results, sorted by build number
+     */
+    synchronized Snapshot read() throws IOException {
+        if (!file.exists()) {
+            return rebuild();
+        }
+        Snapshot current = snapshot != null ? snapshot.get() : null;
+        if (current == null || file.length() < loadedLength) {
+            try {
+                return readStored();
+            } catch (IOException e) {
+                serverLog.warn("Checkmarx trend index of " + job.getFullName() + " is unreadable, rebuilding it: " + e.getMessage());
+                return rebuild();
+            }
+        }
+        return readStored();
+    }
+
+    /**
+     * Unlike {@link #read()}, never goes through the builds of the job.
+     *
+     * @return the records of the index file, or null if there is none
+     * @throws IOException if the index file is unreadable
+     */
+    @Nullable
+    synchronized Snapshot readStored() throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Snapshot current = snapshot != null ? snapshot.get() : null;
+        long length = file.length();
+        if (current == null || length < loadedLength) {
+            current = load(new Builder(), HEADER_SIZE);
+        } else if (length > loadedLength) {
+            current = load(new Builder(current), loadedLength);
+        }
+        return current;
+    }
+
+    /**
+     * Adds the completed build to the index, if it has Checkmarx results.
+     */
+    synchronized void add(Run<?, ?> run) throws IOException {
+        Snapshot current = read();
+        if (current.indexOf(run.getNumber()) >= 0) {
+            // Indexed when the index was created from the build history.
+            return;
+        }
+        Builder builder = new Builder(current);
+        if (!builder.add(run)) {
+            return;
+        }
+        truncatePartialRecord();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            builder.writeRecord(out, builder.size - 1);
+        }
+        setSnapshot(builder.build(), file.length());
+    }
+
+    /**
+     * Removes a deleted build from the index.
+     */
+    synchronized void remove(int number) throws IOException {
+        Snapshot current = read();
+        int index = current.indexOf(number);
+        if (index < 0) {
+            return;
+        }
+        Builder builder = new Builder();
+        for (int i = 0; i < current.size(); i++) {
+            if (i != index) {
+                builder.add(current.numbers[i], current.timestamps[i], current.flags[i], current.counts, i * COLUMNS);
+            }
+        }
+        write(builder);
+    }
+
+    /**
+     * Finds the last build before the given one that has Checkmarx results by binary search in the index of its job,
+     * without loading the builds in between. Records of builds that are no longer there are skipped.
+     *
+     * @return the build, or null if there is none
+     */
+    static Run<?, ?> getPreviousBuild(Run<?, ?> run) {
+        Job<?, ?> job = run.getParent();
+        Snapshot trend;
+        try {
+            trend = forJob(job).read();
+        } catch (IOException e) {
+            serverLog.warn("Failed to read Checkmarx trend index of " + job.getFullName() + ": " + e.getMessage());
+            Run<?, ?> previous = run.getPreviousBuild();
+            while (previous != null && previous.getAction(CxScanResult.class) == null) {
+                previous = previous.getPreviousBuild();
+            }
+            return previous;
+        }
+        for (int i = trend.indexOfLastBefore(run.getNumber()); i >= 0; i--) {
+            Run<?, ?> previous = job.getBuildByNumber(trend.getNumber(i));
+            if (previous != null && previous.getAction(CxScanResult.class) != null) {
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the index from the completed builds of the job. This loads every build once, for jobs that ran before the
+     * index existed.
+     */
+    private Snapshot rebuild() throws IOException {
+        long start = System.currentTimeMillis();
+        Builder builder = new Builder();
+        for (Run<?, ?> run : job.getBuilds()) {
+            if (!run.isBuilding()) {
+                builder.add(run);
+            }
+        }
+        Snapshot rebuilt = write(builder);
+        serverLog.info(String.format("Created Checkmarx trend index of %s with %d builds in %d ms",
+                job.getFullName(), rebuilt.size(), System.currentTimeMillis() - start));
+        return rebuilt;
+    }
+
+    private Snapshot write(Builder builder) throws IOException {
+        Snapshot written = builder.build();
+        File tempFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Builder sorted = new Builder(written);
+            for (int i = 0; i < sorted.size; i++) {
+                sorted.writeRecord(out, i);
+            }
+        }
+        if (file.exists() && !file.delete() || !tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Failed to write " + file);
+        }
+        setSnapshot(written, file.length());
+        return written;
+    }
+
+    /**
+     * Reads the records from the given offset into the builder. A partial record left by an interrupted write is
+     * ignored, it is truncated by the next {@link #add}.
+     */
+    private Snapshot load(Builder builder, long offset) throws IOException {
+        long length;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long fileLength = file.length();
+            if (fileLength < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported trend index format");
+            }
+            length = offset + (fileLength - offset) / RECORD_SIZE * RECORD_SIZE;
+            skipFully(in, offset - HEADER_SIZE);
+            for (long position = offset; position < length; position += RECORD_SIZE) {
+                builder.readRecord(in);
+            }
+        }
+        Snapshot loaded = builder.build();
+        setSnapshot(loaded, length);
+        return loaded;
+    }
+
+    /**
+     * Cuts a partial record left by an interrupted write, so that the next record is appended at a record boundary.
+     * {@link #read()} has loaded all the complete records before.
+     */
+    private void truncatePartialRecord() throws IOException {
+        if (file.length() <= loadedLength) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(loadedLength);
+        }
+    }
+
+    private void setSnapshot(Snapshot current, long length) {
+        snapshot = new SoftReference<>(current);
+        loadedLength = length;
+    }
+
+    private static void skipFully(DataInputStream in, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Immutable, sorted view of the index. Summaries for {@link CxTrendSeries} and the checksum are computed on first use.
+     */
+    static class Snapshot {
+
+        private final int[] numbers;
+        private final long[] timestamps;
+        private final int[] flags;
+        private final int[] counts;
+        // Indexed by flag, computed on first use.
+        private final CxTrendSeries.Blocks[] blocks = new CxTrendSeries.Blocks[FLAG_DEPENDENCY_SCAN + 1];
+        private Long checksum;
+
+        private Snapshot(int[] numbers, long[] timestamps, int[] flags, int[] counts) {
+            this.numbers = numbers;
+            this.timestamps = timestamps;
+            this.flags = flags;
+            this.counts = counts;
+        }
+
+        int size() {
+            return numbers.length;
+        }
+
+        int getNumber(int index) {
+            return numbers[index];
+        }
+
+        long getTimestamp(int index) {
+            return timestamps[index];
+        }
+
+        boolean hasFlag(int index, int flag) {
+            return (flags[index] & flag) != 0;
+        }
+
+        boolean isSast(int index) {
+            return (flags[index] & FLAG_SAST) != 0;
+        }
+
+        boolean isDependencyScan(int index) {
+            return (flags[index] & FLAG_DEPENDENCY_SCAN) != 0;
+        }
+
+        boolean isAsynchronous(int index) {
+            return (flags[index] & FLAG_ASYNCHRONOUS) != 0;
+        }
+
+        boolean isReused(int index) {
+            return (flags[index] & FLAG_REUSED) != 0;
+        }
+
+        /**
+         * @param column one of {@link #HIGH} to {@link #DEPENDENCY_LOW}
+         */
+        int getCount(int index, int column) {
+            return counts[index * COLUMNS + column];
+        }
+
+        /**
+         * @return the index of the build, or a negative value if it is not indexed
+         */
+        int indexOf(int number) {
+            return Arrays.binarySearch(numbers, number);
+        }
+
+        /**
+         * @return the index of the last build with a number less than the given one, or -1 if there is none
+         */
+        int indexOfLastBefore(int number) {
+            int index = Arrays.binarySearch(numbers, number);
+            return index >= 0 ? index - 1 : -index - 2;
+        }
+
+        /**
+         * @return the index of the first build with a number greater than the given one, or {@link #size()} if there is
+         * none
+         */
+        int indexOfFirstAfter(int number) {
+            int index = Arrays.binarySearch(numbers, number);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+
+        /**
+         * Build timestamps follow build numbers, so the records are searched as if they were sorted by timestamp.
+         *
+         * @return the index of the first build that started at or after the given time, or {@link #size()} if none did
+         */
+        int indexOfFirstSince(long timestamp) {
+            int low = 0;
+            int high = numbers.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[middle] < timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return a hash of all the records, which changes when a build is added, removed or indexed again with other
+         * counts
+         */
+        synchronized long getChecksum() {
+            if (checksum == null) {
+                long hash = Arrays.hashCode(numbers);
+                hash = hash * 31 + Arrays.hashCode(timestamps);
+                hash = hash * 31 + Arrays.hashCode(flags);
+                hash = hash * 31 + Arrays.hashCode(counts);
+                checksum = hash;
+            }
+            return checksum;
+        }
+
+        /**
+         * @param flag {@link #FLAG_SAST} or {@link #FLAG_DEPENDENCY_SCAN}
+         */
+        synchronized CxTrendSeries.Blocks getBlocks(int flag) {
+            if (blocks[flag] == null) {
+                blocks[flag] = new CxTrendSeries.Blocks(this, flag);
+            }
+            return blocks[flag];
+        }
+    }
+
+    /**
+     * Collects records in any order and sorts them into a {@link Snapshot}.
+     */
+    static class Builder {
+
+        private int size;
+        private int[] numbers = new int[64];
+        private long[] timestamps = new long[64];
+        private int[] flags = new int[64];
+        private int[] counts = new int[64 * COLUMNS];
+
+        Builder() {
+        }
+
+        Builder(Snapshot snapshot) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                add(snapshot.numbers[i], snapshot.timestamps[i], snapshot.flags[i], snapshot.counts, i * COLUMNS);
+            }
+        }
+
+        /**
+         * @return whether the build has Checkmarx results
+         */
+        boolean add(Run<?, ?> run) {
+            List<CxScanResult> results = run.getActions(CxScanResult.class);
+            if (results.isEmpty()) {
+                return false;
+            }
+            int recordFlags = 0;
+            int[] recordCounts = new int[COLUMNS];
+            for (CxScanResult result : results) {
+                if (result.getSastEnabled() == null || result.getSastEnabled()) {
+                    recordFlags |= FLAG_SAST;
+                    recordCounts[HIGH] = result.getHighCount();
+                    recordCounts[MEDIUM] = result.getMediumCount();
+                    recordCounts[LOW] = result.getLowCount();
+                    recordCounts[INFO] = result.getInfoCount();
+                }
+                if (result.isOsaEnabled() || result.isDependencyScanResultsAvailable()) {
+                    recordFlags |= FLAG_DEPENDENCY_SCAN;
+                    recordCounts[DEPENDENCY_HIGH] = result.getOsaHighCount();
+                    recordCounts[DEPENDENCY_MEDIUM] = result.getOsaMediumCount();
+                    recordCounts[DEPENDENCY_LOW] = result.getOsaLowCount();
+                }
+                if (result.isScanRanAsynchronous()) {
+                    recordFlags |= FLAG_ASYNCHRONOUS;
+                }
+                if (result.getReusedFromBuild() != null) {
+                    recordFlags |= FLAG_REUSED;
+                }
+            }
+            add(run.getNumber(), run.getTimeInMillis(), recordFlags, recordCounts, 0);
+            return true;
+        }
+
+        void add(int number, long timestamp, int recordFlags, int[] source, int sourceOffset) {
+            if (size == numbers.length) {
+                int capacity = size * 2;
+                numbers = Arrays.copyOf(numbers, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                counts = Arrays.copyOf(counts, capacity * COLUMNS);
+            }
+            numbers[size] = number;
+            timestamps[size] = timestamp;
+            flags[size] = recordFlags;
+            System.arraycopy(source, sourceOffset, counts, size * COLUMNS, COLUMNS);
+            size++;
+        }
+
+        void readRecord(DataInputStream in) throws IOException {
+            int number = in.readInt();
+            long timestamp = in.readLong();
+            int recordFlags = in.readInt();
+            int[] recordCounts = new int[COLUMNS];
+            for (int column = 0; column < COLUMNS; column++) {
+                recordCounts[column] = in.readInt();
+            }
+            add(number, timestamp, recordFlags, recordCounts, 0);
+        }
+
+        void writeRecord(DataOutputStream out, int index) throws IOException {
+            out.writeInt(numbers[index]);
+            out.writeLong(timestamps[index]);
+            out.writeInt(flags[index]);
+            for (int column = 0; column < COLUMNS; column++) {
+                out.writeInt(counts[index * COLUMNS + column]);
+            }
+        }
+
+        Snapshot build() {
+            // Sort by build number, then by position, so that the last record of a build wins.
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) numbers[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            int unique = 0;
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                if (i + 1 < size && (int) (order[i + 1] >>> 32) == (int) (order[i] >>> 32)) {
+                    continue;
+                }
+                sorted[unique++] = (int) order[i];
+            }
+
+            int[] snapshotNumbers = new int[unique];
+            long[] snapshotTimestamps = new long[unique];
+            int[] snapshotFlags = new int[unique];
+            int[] snapshotCounts = new int[unique * COLUMNS];
+            for (int i = 0; i < unique; i++) {
+                int from = sorted[i];
+                snapshotNumbers[i] = numbers[from];
+                snapshotTimestamps[i] = timestamps[from];
+                snapshotFlags[i] = flags[from];
+                System.arraycopy(counts, from * COLUMNS, snapshotCounts, i * COLUMNS, COLUMNS);
+            }
+            return new Snapshot(snapshotNumbers, snapshotTimestamps, snapshotFlags, snapshotCounts);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import hudson.model.Job;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the {@link CxTrendIndex} of a job as JSON, for dashboards that poll many jobs. Builds are returned oldest
+ * first, in pages:
+ * <pre>
+ * {"job": "folder/job", "lastBuild": 42, "builds": [
+ *   {"number": 41, "timestamp": 1580000000000, "asynchronous": false, "reused": false,
+ *    "sast": {"high": 1, "medium": 2, "low": 3, "info": 4},
+ *    "dependencyScan": {"high": 0, "medium": 1, "low": 2}}, ...],
+ *  "nextCursor": "41"}
+ * </pre>
+ * Parameters:
+ * <ul>
+ * <li>{@code since}: only builds with a greater number, for incremental fetches.</li>
+ * <li>{@code cursor}: the {@code nextCursor} of the previous page. It is absent from the last page.</li>
+ * <li>{@code limit}: page size, {@link #DEFAULT_LIMIT} by default, at most {@link #MAX_LIMIT}.</li>
+ * </ul>
+ * The response has an ETag derived from the content of the index and the parameters, and unchanged pages are
+ * answered with 304 Not Modified. No builds are loaded, see {@link CxTrendIndex#read()}.
+ */
+class CxTrendJson {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Job<?, ?> job;
+
+    CxTrendJson(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    void serve(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        int after;
+        int limit;
+        try {
+            after = Math.max(parseInt(req.getParameter("since"), 0), parseInt(req.getParameter("cursor"), 0));
+            limit = Math.min(parseInt(req.getParameter("limit"), DEFAULT_LIMIT), MAX_LIMIT);
+        } catch (NumberFormatException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "since, cursor and limit must be numbers");
+            return;
+        }
+        if (limit <= 0) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit must be positive");
+            return;
+        }
+
+        CxTrendIndex.Snapshot trend = CxTrendIndex.forJob(job).read();
+        int last = trend.size() - 1;
+        int lastBuild = last >= 0 ? trend.getNumber(last) : 0;
+        String etag = "\"" + Integer.toHexString(job.getFullName().hashCode()) + "-" + lastBuild + "-" + trend.size()
+                + "-" + Long.toHexString(trend.getChecksum()) + "-" + after + "-" + limit + "\"";
+        rsp.setHeader("ETag", etag);
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        if (CxReportDownload.matchesETag(req, etag)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        int from = trend.indexOfFirstAfter(after);
+        int to = Math.min(from + limit, trend.size());
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(rsp.getOutputStream(), JsonEncoding.UTF8)) {
+            json.writeStartObject();
+            json.writeStringField("job", job.getFullName());
+            json.writeNumberField("lastBuild", lastBuild);
+            json.writeArrayFieldStart("builds");
+            for (int i = from; i < to; i++) {
+                writeBuild(json, trend, i);
+            }
+            json.writeEndArray();
+            if (to < trend.size()) {
+                json.writeStringField("nextCursor", Integer.toString(trend.getNumber(to - 1)));
+            }
+            json.writeEndObject();
+        }
+    }
+
+    private static void writeBuild(JsonGenerator json, CxTrendIndex.Snapshot trend, int index) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("number", trend.getNumber(index));
+        json.writeNumberField("timestamp", trend.getTimestamp(index));
+        json.writeBooleanField("asynchronous", trend.isAsynchronous(index));
+        json.writeBooleanField("reused", trend.isReused(index));
+        if (trend.isSast(index)) {
+            json.writeObjectFieldStart("sast");
+            json.writeNumberField("high", trend.getCount(index, CxTrendIndex.HIGH));
+            json.writeNumberField("medium", trend.getCount(index, CxTrendIndex.MEDIUM));
+            json.writeNumberField("low", trend.getCount(index, CxTrendIndex.LOW));
+            json.writeNumberField("info", trend.getCount(index, CxTrendIndex.INFO));
+            json.writeEndObject();
+        }
+        if (trend.isDependencyScan(index)) {
+            json.writeObjectFieldStart("dependencyScan");
+            json.writeNumberField("high", trend.getCount(index, CxTrendIndex.DEPENDENCY_HIGH));
+            json.writeNumberField("medium", trend.getCount(index, CxTrendIndex.DEPENDENCY_MEDIUM));
+            json.writeNumberField("low", trend.getCount(index, CxTrendIndex.DEPENDENCY_LOW));
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,233 @@
+package com.checkmarx.jenkins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Points of a trend graph over a {@link CxTrendIndex.Snapshot}: one point per build in the trend window, and the builds
+ * before the window downsampled into at most {@link #MAX_BUCKETS} buckets. A bucket has the counts of its last build,
+ * and the minimum and maximum counts of all its builds.
+ * <p>
+ * The window is found by binary search on the timestamps and by counting back over {@link Blocks}, which summarize
+ * {@link #BLOCK_SIZE} records each and are computed once per snapshot. The buckets are aggregated from the same
+ * blocks. The work per graph grows with the window and the number of blocks, not with the number of records.
+ */
+class CxTrendSeries {
+
+    static final int MAX_BUCKETS = 30;
+    static final int BLOCK_SIZE = 32;
+
+    private CxTrendSeries() {
+    }
+
+    /**
+     * @param flag         {@link CxTrendIndex#FLAG_SAST} or {@link CxTrendIndex#FLAG_DEPENDENCY_SCAN}, only records with
+     *                     this flag are included
+     * @param windowBuilds number of most recent builds with the flag shown one by one, 0 for all
+     * @param windowDays   number of most recent days whose builds are shown one by one, 0 for no limit
+     * @return the points, oldest first
+     */
+    static List<Point> create(CxTrendIndex.Snapshot trend, int flag, int windowBuilds, int windowDays, long now) {
+        int size = trend.size();
+        Blocks blocks = trend.getBlocks(flag);
+        int start = 0;
+        if (windowBuilds > 0) {
+            start = Math.max(start, indexOfLast(trend, blocks, flag, windowBuilds));
+        }
+        if (windowDays > 0) {
+            start = Math.max(start, trend.indexOfFirstSince(now - TimeUnit.DAYS.toMillis(windowDays)));
+        }
+
+        List<Point> points = new ArrayList<>();
+        if (start > 0) {
+            int bucketSize = (start + MAX_BUCKETS - 1) / MAX_BUCKETS;
+            if (bucketSize > BLOCK_SIZE) {
+                // Whole blocks, so that only the last bucket scans records.
+                bucketSize = (bucketSize + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+            }
+            for (int from = 0; from < start; from += bucketSize) {
+                Point bucket = aggregate(trend, blocks, flag, from, Math.min(from + bucketSize, start));
+                if (bucket != null) {
+                    points.add(bucket);
+                }
+            }
+        }
+        for (int i = start; i < size; i++) {
+            if (trend.hasFlag(i, flag)) {
+                Point point = new Point(trend.getNumber(i));
+                point.add(trend, i);
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Walks back from the last record, skipping whole blocks that have fewer records with the flag than are still
+     * needed.
+     *
+     * @return the index of the first of the last {@code builds} records with the flag, or 0 if there are not that many
+     */
+    static int indexOfLast(CxTrendIndex.Snapshot trend, Blocks blocks, int flag, int builds) {
+        int remaining = builds;
+        int i = trend.size() - 1;
+        while (i >= 0) {
+            int block = i / BLOCK_SIZE;
+            if ((i + 1) % BLOCK_SIZE == 0 && blocks.builds[block] < remaining) {
+                remaining -= blocks.builds[block];
+                i -= BLOCK_SIZE;
+            } else {
+                if (trend.hasFlag(i, flag) && --remaining == 0) {
+                    return i;
+                }
+                i--;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the bucket of the records from {@code from} (inclusive) to {@code to} (exclusive), or null if none of them
+     * has the flag
+     */
+    private static Point aggregate(CxTrendIndex.Snapshot trend, Blocks blocks, int flag, int from, int to) {
+        Point bucket = null;
+        int i = from;
+        while (i < to) {
+            int block = i / BLOCK_SIZE;
+            if (i % BLOCK_SIZE == 0 && i + BLOCK_SIZE <= to) {
+                if (blocks.lastIndex[block] >= 0) {
+                    if (bucket == null) {
+                        bucket = new Point(blocks.firstNumber[block]);
+                    }
+                    bucket.add(trend, blocks, block);
+                }
+                i += BLOCK_SIZE;
+            } else {
+                if (trend.hasFlag(i, flag)) {
+                    if (bucket == null) {
+                        bucket = new Point(trend.getNumber(i));
+                    }
+                    bucket.add(trend, i);
+                }
+                i++;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * A build, or a bucket of builds.
+     */
+    static class Point {
+
+        private final int firstBuild;
+        private int lastBuild;
+        private int builds;
+        private final int[] last = new int[CxTrendIndex.COLUMNS];
+        private final int[] min = new int[CxTrendIndex.COLUMNS];
+        private final int[] max = new int[CxTrendIndex.COLUMNS];
+
+        private Point(int firstBuild) {
+            this.firstBuild = firstBuild;
+            Arrays.fill(min, Integer.MAX_VALUE);
+            Arrays.fill(max, Integer.MIN_VALUE);
+        }
+
+        private void add(CxTrendIndex.Snapshot trend, int index) {
+            lastBuild = trend.getNumber(index);
+            builds++;
+            for (int column = 0; column < CxTrendIndex.COLUMNS; column++) {
+                int count = trend.getCount(index, column);
+                last[column] = count;
+                min[column] = Math.min(min[column], count);
+                max[column] = Math.max(max[column], count);
+            }
+        }
+
+        private void add(CxTrendIndex.Snapshot trend, Blocks blocks, int block) {
+            lastBuild = trend.getNumber(blocks.lastIndex[block]);
+            builds += blocks.builds[block];
+            for (int column = 0; column < CxTrendIndex.COLUMNS; column++) {
+                last[column] = trend.getCount(blocks.lastIndex[block], column);
+                min[column] = Math.min(min[column], blocks.min[block * CxTrendIndex.COLUMNS + column]);
+                max[column] = Math.max(max[column], blocks.max[block * CxTrendIndex.COLUMNS + column]);
+            }
+        }
+
+        int getFirstBuild() {
+            return firstBuild;
+        }
+
+        int getLastBuild() {
+            return lastBuild;
+        }
+
+        int getBuilds() {
+            return builds;
+        }
+
+        boolean isBucket() {
+            return builds > 1;
+        }
+
+        /**
+         * @param column one of {@link CxTrendIndex#HIGH} to {@link CxTrendIndex#DEPENDENCY_LOW}
+         */
+        int getLast(int column) {
+            return last[column];
+        }
+
+        int getMin(int column) {
+            return min[column];
+        }
+
+        int getMax(int column) {
+            return max[column];
+        }
+    }
+
+    /**
+     * Summaries of consecutive blocks of {@link #BLOCK_SIZE} records, counting only the records with one flag.
+     */
+    static class Blocks {
+
+        private final int[] firstNumber;
+        private final int[] lastIndex;
+        private final int[] builds;
+        private final int[] min;
+        private final int[] max;
+
+        Blocks(CxTrendIndex.Snapshot trend, int flag) {
+            int count = (trend.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            firstNumber = new int[count];
+            lastIndex = new int[count];
+            builds = new int[count];
+            min = new int[count * CxTrendIndex.COLUMNS];
+            max = new int[count * CxTrendIndex.COLUMNS];
+            Arrays.fill(lastIndex, -1);
+            Arrays.fill(min, Integer.MAX_VALUE);
+            Arrays.fill(max, Integer.MIN_VALUE);
+
+            for (int i = 0; i < trend.size(); i++) {
+                if (!trend.hasFlag(i, flag)) {
+                    continue;
+                }
+                int block = i / BLOCK_SIZE;
+                if (lastIndex[block] < 0) {
+                    firstNumber[block] = trend.getNumber(i);
+                }
+                lastIndex[block] = i;
+                builds[block]++;
+                for (int column = 0; column < CxTrendIndex.COLUMNS; column++) {
+                    int offset = block * CxTrendIndex.COLUMNS + column;
+                    int value = trend.getCount(i, column);
+                    min[offset] = Math.min(min[offset], value);
+                    max[offset] = Math.max(max[offset], value);
+                }
+            }
+        }
+    }
+}
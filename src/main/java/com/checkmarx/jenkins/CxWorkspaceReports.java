@@ -0,0 +1,80 @@
+package com.checkmarx.jenkins;
+
+import hudson.FilePath;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Collects the reports of a build that should also be available in the workspace, and copies them to the workspace
+ * in a single transfer: one tar stream that is unpacked on the agent, instead of a round trip per file.
+ * Reports that are compressed in the build directory (see {@link CxReportStorage}) are decompressed into the archive.
+ */
+class CxWorkspaceReports {
+
+    private final Map<String, File> files = new LinkedHashMap<>();
+
+    void add(File file) {
+        if (file.isFile()) {
+            files.put(file.getName(), file);
+        }
+    }
+
+    /**
+     * Copies the collected reports to the {@link CxScanBuilder#REPORTS_FOLDER} of the workspace. Failures are logged,
+     * they do not fail the build.
+     */
+    void copyTo(FilePath workspace, Logger log) throws InterruptedException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        FilePath reportsDir = workspace.child(CxScanBuilder.REPORTS_FOLDER);
+        File archive = null;
+        try {
+            archive = File.createTempFile("cx-reports-", ".tar.gz");
+            writeArchive(archive);
+            for (String name : files.keySet()) {
+                log.info("Copying file [" + name + "] to workspace [" + reportsDir.getRemote() + "/" + name + "]");
+            }
+            try (InputStream in = new FileInputStream(archive)) {
+                reportsDir.untarFrom(in, FilePath.TarCompression.GZIP);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write reports to workspace: " + e.getMessage());
+        } finally {
+            if (archive != null) {
+                archive.delete();
+            }
+            files.clear();
+        }
+    }
+
+    private void writeArchive(File archive) throws IOException {
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(
+                new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(archive))))) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (File file : files.values()) {
+                TarArchiveEntry entry = new TarArchiveEntry(file.getName());
+                entry.setSize(CxReportStorage.isCompressed(file) ? CxReportStorage.getUncompressedLength(file) : file.length());
+                entry.setModTime(file.lastModified());
+                tar.putArchiveEntry(entry);
+                try (InputStream in = CxReportStorage.openForRead(file)) {
+                    IOUtils.copyLarge(in, tar);
+                }
+                tar.closeArchiveEntry();
+            }
+        }
+    }
+}
@@ -9,9 +9,24 @@ import java.io.Serializable;
  * possibly on a remote agent.
  */
 public class RemoteScanInfo implements Serializable {
+    /**
+     * Null when the reports were generated on the agent, then only the {@link #summary} is sent back.
+     */
     private ScanResults scanResults;
+    private RemoteScanSummary summary;
     private String cxARMUrl;
 
+    /**
+     * Id of a SAST scan that was submitted but not awaited on the agent, see {@link CxScanBuilder#isControllerSideWait()}.
+     */
+    private Long pendingSastScanId;
+
+    /**
+     * Workspace relative folder with the reports that the agent generated, see
+     * {@link CxScanBuilder#isTransferReportsAsFiles()}. Null when the controller should generate the reports.
+     */
+    private String reportsPath;
+
     public void setScanResults(ScanResults scanResults) {
         this.scanResults = scanResults;
     }
@@ -20,6 +35,17 @@ public class RemoteScanInfo implements Serializable {
         return scanResults;
     }
 
+    /**
+     * @return the summary of the scans when the reports were generated on the agent, otherwise null
+     */
+    public RemoteScanSummary getSummary() {
+        return summary;
+    }
+
+    public void setSummary(RemoteScanSummary summary) {
+        this.summary = summary;
+    }
+
     public void setCxARMUrl(String cxARMUrl) {
         this.cxARMUrl = cxARMUrl;
     }
@@ -27,4 +53,20 @@ public class RemoteScanInfo implements Serializable {
     public String getCxARMUrl() {
         return cxARMUrl;
     }
+
+    public Long getPendingSastScanId() {
+        return pendingSastScanId;
+    }
+
+    public void setPendingSastScanId(Long pendingSastScanId) {
+        this.pendingSastScanId = pendingSastScanId;
+    }
+
+    public String getReportsPath() {
+        return reportsPath;
+    }
+
+    public void setReportsPath(String reportsPath) {
+        this.reportsPath = reportsPath;
+    }
 }
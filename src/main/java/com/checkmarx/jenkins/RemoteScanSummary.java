@@ -0,0 +1,162 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.dto.DependencyScanResults;
+import com.cx.restclient.dto.ScanResults;
+import com.cx.restclient.dto.scansummary.ScanSummary;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import com.cx.restclient.sca.dto.SCAResults;
+
+import java.io.Serializable;
+
+/**
+ * What the controller needs to know about the scans of a build once the reports exist as files: the scan id,
+ * the vulnerability counts, the errors and the threshold verdict. It is sent back by {@link CxScanCallable} instead of
+ * the scan results, which hold the whole report content, when the reports were generated on the agent.
+ */
+public class RemoteScanSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Exception generalException;
+    private Exception sastCreateException;
+    private Exception sastWaitException;
+    private Exception osaCreateException;
+    private Exception osaWaitException;
+
+    private boolean thresholdErrors;
+    private String thresholdDescription;
+
+    private boolean sastResultsReady;
+    private long sastScanId;
+    private int high;
+    private int medium;
+    private int low;
+    private int info;
+
+    private boolean dependencyScanResultsAvailable;
+    private int dependencyHigh;
+    private int dependencyMedium;
+    private int dependencyLow;
+
+    /**
+     * Evaluates the thresholds of the configuration against the scan results and keeps the verdict with the counts.
+     */
+    static RemoteScanSummary of(CxScanConfig config, ScanResults results) {
+        RemoteScanSummary summary = new RemoteScanSummary();
+        summary.generalException = results.getGeneralException();
+        summary.sastCreateException = results.getSastCreateException();
+        summary.sastWaitException = results.getSastWaitException();
+        summary.osaCreateException = results.getOsaCreateException();
+        summary.osaWaitException = results.getOsaWaitException();
+
+        ScanSummary scanSummary = new ScanSummary(config, results);
+        summary.thresholdErrors = scanSummary.hasErrors();
+        summary.thresholdDescription = scanSummary.toString();
+
+        SASTResults sastResults = results.getSastResults();
+        if (sastResults != null && sastResults.isSastResultsReady()) {
+            summary.sastResultsReady = true;
+            summary.sastScanId = sastResults.getScanId();
+            summary.high = sastResults.getHigh();
+            summary.medium = sastResults.getMedium();
+            summary.low = sastResults.getLow();
+            summary.info = sastResults.getInformation();
+        }
+
+        DependencyScanResults dsResults = results.getDependencyScanResults();
+        OSAResults osaResults = dsResults != null ? dsResults.getOsaResults() : null;
+        SCAResults scaResults = dsResults != null ? dsResults.getScaResults() : null;
+        if (osaResults != null && osaResults.isOsaResultsReady() && osaResults.getResults() != null) {
+            summary.dependencyScanResultsAvailable = true;
+            summary.dependencyHigh = osaResults.getResults().getTotalHighVulnerabilities();
+            summary.dependencyMedium = osaResults.getResults().getTotalMediumVulnerabilities();
+            summary.dependencyLow = osaResults.getResults().getTotalLowVulnerabilities();
+        } else if (scaResults != null && scaResults.getSummary() != null) {
+            summary.dependencyScanResultsAvailable = true;
+            summary.dependencyHigh = scaResults.getSummary().getHighVulnerabilityCount();
+            summary.dependencyMedium = scaResults.getSummary().getMediumVulnerabilityCount();
+            summary.dependencyLow = scaResults.getSummary().getLowVulnerabilityCount();
+        }
+        return summary;
+    }
+
+    /**
+     * @return whether a scan failed or a threshold or policy was violated
+     */
+    public boolean hasErrors() {
+        return thresholdErrors || generalException != null || sastCreateException != null || sastWaitException != null
+                || osaCreateException != null || osaWaitException != null;
+    }
+
+    public Exception getGeneralException() {
+        return generalException;
+    }
+
+    public Exception getSastCreateException() {
+        return sastCreateException;
+    }
+
+    public Exception getSastWaitException() {
+        return sastWaitException;
+    }
+
+    public Exception getOsaCreateException() {
+        return osaCreateException;
+    }
+
+    public Exception getOsaWaitException() {
+        return osaWaitException;
+    }
+
+    /**
+     * @return the threshold and policy violations, as printed by the client library
+     */
+    public String getThresholdDescription() {
+        return thresholdDescription;
+    }
+
+    public boolean isSastResultsReady() {
+        return sastResultsReady;
+    }
+
+    public long getSastScanId() {
+        return sastScanId;
+    }
+
+    public int getHigh() {
+        return high;
+    }
+
+    public int getMedium() {
+        return medium;
+    }
+
+    public int getLow() {
+        return low;
+    }
+
+    public int getInfo() {
+        return info;
+    }
+
+    /**
+     * @return whether an OSA or SCA scan of this build returned results
+     */
+    public boolean isDependencyScanResultsAvailable() {
+        return dependencyScanResultsAvailable;
+    }
+
+    public int getDependencyHigh() {
+        return dependencyHigh;
+    }
+
+    public int getDependencyMedium() {
+        return dependencyMedium;
+    }
+
+    public int getDependencyLow() {
+        return dependencyLow;
+    }
+}
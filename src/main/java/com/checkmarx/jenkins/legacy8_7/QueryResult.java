@@ -20,6 +20,20 @@ public class QueryResult {
         @JsonProperty("count")
         private int count;
 
+        // Precomputed by QueryResultList, computed on each call otherwise.
+        @Nullable
+        private transient String prettyName;
+
+        public QueryResult() {
+        }
+
+        QueryResult(@Nullable String name, @Nullable String severity, int count, @NotNull String prettyName) {
+            this.name = name;
+            this.severity = severity;
+            this.count = count;
+            this.prettyName = prettyName;
+        }
+
         @Nullable
         public String getName() {
             return name;
@@ -27,6 +41,7 @@ public class QueryResult {
 
         public void setName(@Nullable String name) {
             this.name = name;
+            this.prettyName = null;
         }
 
         @Nullable
@@ -48,6 +63,9 @@ public class QueryResult {
 
         @NotNull
         public String getPrettyName() {
+            if (this.prettyName != null) {
+                return this.prettyName;
+            }
             if (this.name != null) {
                 return this.name.replace('_', ' ');
             } else {
@@ -0,0 +1,188 @@
+package com.checkmarx.jenkins.legacy8_7;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Compact list of {@link QueryResult}s: the names, severities and counts are kept in parallel arrays instead of one
+ * object per query. Names, pretty names and severities are interned, so the same query in many builds shares its
+ * strings. The elements returned by {@link #get(int)} are views created on demand with the pretty name precomputed.
+ * <p>
+ * Build records store the list in the same form as the {@code LinkedList<QueryResult>} it replaces, see
+ * {@link ConverterImpl}, so existing records stay readable and new records stay readable by older versions.
+ */
+public class QueryResultList extends AbstractList<QueryResult> implements RandomAccess {
+
+    private static final String[] NO_STRINGS = new String[0];
+    private static final int[] NO_INTS = new int[0];
+
+    private int size;
+    private String[] names = NO_STRINGS;
+    private String[] prettyNames = NO_STRINGS;
+    private String[] severities = NO_STRINGS;
+    private int[] counts = NO_INTS;
+
+    @Override
+    public QueryResult get(int index) {
+        checkIndex(index, size);
+        return new QueryResult(names[index], severities[index], counts[index], prettyNames[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public QueryResult set(int index, QueryResult element) {
+        QueryResult previous = get(index);
+        store(index, element);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, QueryResult element) {
+        checkIndex(index, size + 1);
+        if (size == counts.length) {
+            int capacity = Math.max(8, size + (size >> 1));
+            names = Arrays.copyOf(names, capacity);
+            prettyNames = Arrays.copyOf(prettyNames, capacity);
+            severities = Arrays.copyOf(severities, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(names, index, names, index + 1, moved);
+            System.arraycopy(prettyNames, index, prettyNames, index + 1, moved);
+            System.arraycopy(severities, index, severities, index + 1, moved);
+            System.arraycopy(counts, index, counts, index + 1, moved);
+        }
+        store(index, element);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public QueryResult remove(int index) {
+        QueryResult previous = get(index);
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(names, index + 1, names, index, moved);
+            System.arraycopy(prettyNames, index + 1, prettyNames, index, moved);
+            System.arraycopy(severities, index + 1, severities, index, moved);
+            System.arraycopy(counts, index + 1, counts, index, moved);
+        }
+        size--;
+        names[size] = null;
+        prettyNames[size] = null;
+        severities[size] = null;
+        modCount++;
+        return previous;
+    }
+
+    /**
+     * Drops the spare capacity, once the list is complete.
+     */
+    public void trimToSize() {
+        if (size < counts.length) {
+            names = Arrays.copyOf(names, size);
+            prettyNames = Arrays.copyOf(prettyNames, size);
+            severities = Arrays.copyOf(severities, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+    }
+
+    private void store(int index, QueryResult element) {
+        String name = element.getName();
+        names[index] = name != null ? name.intern() : null;
+        prettyNames[index] = element.getPrettyName().intern();
+        severities[index] = element.getSeverity() != null ? element.getSeverity().intern() : null;
+        counts[index] = element.getCount();
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Reads and writes the list as a {@code LinkedList<QueryResult>} field was written: one element per query with
+     * {@code name}, {@code severity} and {@code count} children.
+     */
+    public static class ConverterImpl implements Converter {
+
+        private final Mapper mapper;
+
+        public ConverterImpl(Mapper mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean canConvert(Class type) {
+            return type == QueryResultList.class;
+        }
+
+        @Override
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            QueryResultList list = (QueryResultList) source;
+            String element = mapper.serializedClass(QueryResult.class);
+            for (int i = 0; i < list.size; i++) {
+                writer.startNode(element);
+                writeNode(writer, "name", list.names[i]);
+                writeNode(writer, "severity", list.severities[i]);
+                writeNode(writer, "count", Integer.toString(list.counts[i]));
+                writer.endNode();
+            }
+        }
+
+        private static void writeNode(HierarchicalStreamWriter writer, String name, String value) {
+            if (value != null) {
+                writer.startNode(name);
+                writer.setValue(value);
+                writer.endNode();
+            }
+        }
+
+        @Override
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            QueryResultList list = new QueryResultList();
+            while (reader.hasMoreChildren()) {
+                reader.moveDown();
+                QueryResult result = new QueryResult();
+                while (reader.hasMoreChildren()) {
+                    reader.moveDown();
+                    String node = reader.getNodeName();
+                    if ("name".equals(node)) {
+                        result.setName(reader.getValue());
+                    } else if ("severity".equals(node)) {
+                        result.setSeverity(reader.getValue());
+                    } else if ("count".equals(node)) {
+                        result.setCount(parseCount(reader.getValue()));
+                    }
+                    reader.moveUp();
+                }
+                list.add(result);
+                reader.moveUp();
+            }
+            list.trimToSize();
+            return list;
+        }
+
+        private static int parseCount(String value) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
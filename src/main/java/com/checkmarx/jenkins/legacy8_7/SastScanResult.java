@@ -1,11 +1,8 @@
 package com.checkmarx.jenkins.legacy8_7;
 
-import com.checkmarx.jenkins.legacy8_7.QueryResult;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.LinkedList;
-
 /**
  * Created by zoharby on 22/01/2017.
  */
@@ -20,10 +17,10 @@ public class SastScanResult {
     private Integer newMediumCount;
     private Integer newLowCount;
 
-    private LinkedList<QueryResult> highQueryResultList;
-    private LinkedList<QueryResult> mediumQueryResultList;
-    private LinkedList<QueryResult> lowQueryResultList;
-    private LinkedList<QueryResult> infoQueryResultList;
+    private QueryResultList highQueryResultList;
+    private QueryResultList mediumQueryResultList;
+    private QueryResultList lowQueryResultList;
+    private QueryResultList infoQueryResultList;
 
     private String highQueryResultsJson;
     private String mediumQueryResultsJson;
@@ -48,10 +45,10 @@ public class SastScanResult {
     private String errorMessage;
 
     public SastScanResult() {
-        this.highQueryResultList = new LinkedList<>();
-        this.mediumQueryResultList = new LinkedList<>();
-        this.lowQueryResultList = new LinkedList<>();
-        this.infoQueryResultList = new LinkedList<>();
+        this.highQueryResultList = new QueryResultList();
+        this.mediumQueryResultList = new QueryResultList();
+        this.lowQueryResultList = new QueryResultList();
+        this.infoQueryResultList = new QueryResultList();
     }
 
     public Integer getHighCount() {
@@ -98,19 +95,19 @@ public class SastScanResult {
 
     public void setNewLowCount(Integer newLowCount) { this.newLowCount = newLowCount; }
 
-    public LinkedList<QueryResult> getHighQueryResultList() {
+    public QueryResultList getHighQueryResultList() {
         return highQueryResultList;
     }
 
-    public LinkedList<QueryResult> getMediumQueryResultList() {
+    public QueryResultList getMediumQueryResultList() {
         return mediumQueryResultList;
     }
 
-    public LinkedList<QueryResult> getLowQueryResultList() {
+    public QueryResultList getLowQueryResultList() {
         return lowQueryResultList;
     }
 
-    public LinkedList<QueryResult> getInfoQueryResultList() {
+    public QueryResultList getInfoQueryResultList() {
         return infoQueryResultList;
     }
 
@@ -0,0 +1,145 @@
+package com.checkmarx.jenkins;
+
+import com.checkmarx.jenkins.legacy8_7.QueryResult;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CxFindingsIndexTest {
+
+    private static final String REPORT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<CxXMLResults ScanId=\"1000042\" ProjectName=\"demo\">\n" +
+            "  <Query id=\"589\" cweId=\"79\" name=\"Reflected_XSS_All_Clients\" Severity=\"High\">\n" +
+            "    <Result NodeId=\"1\" FileName=\"src/main/webapp/index.jsp\" Status=\"New\" Line=\"12\" " +
+            "FalsePositive=\"False\" Severity=\"High\" state=\"0\">\n" +
+            "      <Path ResultId=\"1\" PathId=\"1\" SimilarityId=\"-1404213420\"/>\n" +
+            "    </Result>\n" +
+            "    <Result NodeId=\"2\" FileName=\"src/main/webapp/search.jsp\" Status=\"Recurrent\" Line=\"40\" " +
+            "FalsePositive=\"True\" Severity=\"High\" state=\"1\">\n" +
+            "      <Path ResultId=\"2\" PathId=\"2\" SimilarityId=\"77\"/>\n" +
+            "    </Result>\n" +
+            "  </Query>\n" +
+            "  <Query id=\"600\" cweId=\"89\" name=\"SQL_Injection\" Severity=\"High\">\n" +
+            "    <Result NodeId=\"3\" FileName=\"src/main/java/Dao.java\" Status=\"Recurrent\" Line=\"7\" " +
+            "FalsePositive=\"False\" state=\"2\">\n" +
+            "      <Path ResultId=\"3\" PathId=\"3\" SimilarityId=\"12\"/>\n" +
+            "    </Result>\n" +
+            "    <Result NodeId=\"4\" FileName=\"src/main/java/Dao.java\" Status=\"Recurrent\" Line=\"9\" " +
+            "FalsePositive=\"False\" Severity=\"Medium\" state=\"0\">\n" +
+            "      <Path ResultId=\"4\" PathId=\"4\" SimilarityId=\"13\"/>\n" +
+            "    </Result>\n" +
+            "  </Query>\n" +
+            "  <Query id=\"700\" cweId=\"0\" name=\"Unused_Variable\" Severity=\"Information\">\n" +
+            "    <Result NodeId=\"5\" FileName=\"src/main/java/Dao.java\" Status=\"New\" Line=\"3\" FalsePositive=\"False\">\n" +
+            "      <Path ResultId=\"5\" PathId=\"5\" SimilarityId=\"5\"/>\n" +
+            "    </Result>\n" +
+            "  </Query>\n" +
+            "</CxXMLResults>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        CxFindingsIndex index = writeIndex();
+
+        assertEquals(5, index.size());
+
+        assertEquals(589, index.getQueryId(0));
+        assertEquals("Reflected_XSS_All_Clients", index.getQueryName(0));
+        assertEquals(79, index.getCwe(0));
+        assertEquals("src/main/webapp/index.jsp", index.getFileName(0));
+        assertEquals(12, index.getLine(0));
+        assertEquals(((long) 589 << 32) | (-1404213420 & 0xFFFFFFFFL), index.getFingerprint(0));
+        assertEquals(CxFindingsIndex.SEVERITY_HIGH, index.getSeverity(0));
+        assertEquals(0, index.getState(0));
+        assertTrue(index.isNew(0));
+        assertFalse(index.isFalsePositive(0));
+
+        assertFalse(index.isNew(1));
+        assertTrue(index.isFalsePositive(1));
+        assertEquals(1, index.getState(1));
+
+        // Results without a severity of their own take the severity of their query.
+        assertEquals(CxFindingsIndex.SEVERITY_HIGH, index.getSeverity(2));
+        assertEquals(CxFindingsIndex.SEVERITY_MEDIUM, index.getSeverity(3));
+        assertEquals(CxFindingsIndex.SEVERITY_INFO, index.getSeverity(4));
+
+        // File names are stored once.
+        assertEquals("src/main/java/Dao.java", index.getFileName(2));
+        assertEquals(index.getFileName(2), index.getFileName(4));
+    }
+
+    @Test
+    public void readsCompressedReports() throws IOException {
+        File report = folder.newFile(CxScanBuilder.SCAN_REPORT_XML);
+        CxReportStorage.write(report, REPORT);
+        File indexFile = new File(folder.getRoot(), CxFindingsIndex.FILE_NAME);
+
+        assertEquals(5, CxFindingsIndexWriter.write(report, indexFile));
+        assertEquals("Unused_Variable", CxFindingsIndex.open(indexFile).getQueryName(4));
+    }
+
+    @Test
+    public void readsIntoTheHeap() throws IOException {
+        writeIndex();
+        CxFindingsIndex index = CxFindingsIndex.read(new File(folder.getRoot(), CxFindingsIndex.FILE_NAME));
+
+        assertEquals(5, index.size());
+        assertEquals("Reflected_XSS_All_Clients", index.getQueryName(0));
+        assertEquals("src/main/java/Dao.java", index.getFileName(4));
+        assertArrayEquals(new int[]{1, 0, 1, 3}, index.countBySeverity());
+    }
+
+    @Test
+    public void countsBySeverity() throws IOException {
+        int[] counts = writeIndex().countBySeverity();
+
+        assertArrayEquals(new int[]{1, 0, 1, 3}, counts);
+    }
+
+    @Test
+    public void buildsQueryResultListsWithoutFalsePositives() throws IOException {
+        CxScanResultDetails details = CxScanResultDetails.fromFindingsIndex(writeIndex());
+
+        List<QueryResult> high = details.highQueryResultList;
+        assertEquals(2, high.size());
+        assertEquals("Reflected_XSS_All_Clients", high.get(0).getName());
+        assertEquals(1, high.get(0).getCount());
+        assertEquals("SQL Injection", high.get(1).getPrettyName());
+        assertEquals(1, high.get(1).getCount());
+        assertEquals("High", high.get(1).getSeverity());
+
+        assertEquals(1, details.mediumQueryResultList.size());
+        assertEquals("SQL_Injection", details.mediumQueryResultList.get(0).getName());
+        assertTrue(details.lowQueryResultList.isEmpty());
+        assertEquals("Information", details.infoQueryResultList.get(0).getSeverity());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile(CxFindingsIndex.FILE_NAME);
+        FileUtils.writeStringToFile(file, "not an index, but long enough for a header", StandardCharsets.UTF_8);
+
+        CxFindingsIndex.open(file);
+    }
+
+    private CxFindingsIndex writeIndex() throws IOException {
+        File report = folder.newFile(CxScanBuilder.SCAN_REPORT_XML);
+        FileUtils.writeStringToFile(report, REPORT, StandardCharsets.UTF_8);
+        File indexFile = new File(folder.getRoot(), CxFindingsIndex.FILE_NAME);
+        assertEquals(5, CxFindingsIndexWriter.write(report, indexFile));
+        return CxFindingsIndex.open(indexFile);
+    }
+}
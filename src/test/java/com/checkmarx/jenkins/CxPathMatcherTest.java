@@ -0,0 +1,112 @@
+package com.checkmarx.jenkins;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link CxPathMatcher} against Ant's {@link SelectorUtils}, which is how filter patterns used to be evaluated.
+ */
+public class CxPathMatcherTest {
+
+    private static final String[] DIRECTORIES = {"", "src/", "src/main/java/", ".git/", "a/.git/b/", "bin/", "a/bin/",
+            "node_modules/", "web/node_modules/lib/", "_cvs/", "obj/", "Checkmarx/", "Checkmarx/Reports/",
+            "a/Checkmarx/Reports/", "binary/", ".idea/x/"};
+    private static final String[] NAMES = {"App.java", "app.js", "Main.class", "image.png", "archive.tar.gz",
+            "archive.gz", "archive.tgz", ".DS_Store", "notes.DS_Store", "report.xml", "Report", "bin", "node_modules",
+            ".git", "OSADependencies.json", "file.lock", "noextension", "x.BAK", "x.bak", "a.b.c", "page.xhtml"};
+
+    @Test
+    public void matchesLikeAntOnDefaultFilterPattern() throws Exception {
+        List<String> globs = getDefaultExcludeGlobs();
+        CxPathMatcher matcher = CxPathMatcher.compile(globs);
+
+        for (String directory : DIRECTORIES) {
+            for (String name : NAMES) {
+                String path = directory + name;
+                assertEquals(path, matchesAny(globs, path), matcher.matches(path));
+            }
+        }
+    }
+
+    @Test
+    public void matchesLikeAntOnEachDefaultGlob() throws Exception {
+        for (String glob : getDefaultExcludeGlobs()) {
+            CxPathMatcher matcher = CxPathMatcher.compile(Collections.singletonList(glob));
+            for (String directory : DIRECTORIES) {
+                for (String name : NAMES) {
+                    String path = directory + name;
+                    assertEquals(glob + " " + path, SelectorUtils.matchPath(glob, path), matcher.matches(path));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void directoryGlobMatchesTheDirectoryPathItself() {
+        List<String> globs = Arrays.asList("**/bin/**", "lib/generated/**", "**/obj/**/*");
+        CxPathMatcher matcher = CxPathMatcher.compile(globs);
+
+        for (String path : Arrays.asList("bin", "a/bin", "a/bin/b", "lib/generated", "lib/generated/x.java",
+                "lib/generatedx", "obj", "a/obj", "a/obj/b")) {
+            assertEquals(path, matchesAny(globs, path), matcher.matches(path));
+        }
+        assertTrue(matcher.matches("bin"));
+        assertTrue(matcher.matches("lib/generated"));
+        assertFalse(matcher.matches("obj"));
+    }
+
+    @Test
+    public void directoriesMatchedAsAWhole() {
+        CxPathMatcher matcher = CxPathMatcher.compile(Arrays.asList("**/node_modules/**/*", "lib/generated/**", "**/*.class"));
+
+        assertTrue(matcher.matchesDirectory("node_modules"));
+        assertTrue(matcher.matchesDirectory("web/node_modules"));
+        assertTrue(matcher.matchesDirectory("lib/generated"));
+        assertFalse(matcher.matchesDirectory("lib"));
+        assertFalse(matcher.matchesDirectory("classes"));
+    }
+
+    @Test
+    public void emptyMatcherMatchesNothing() {
+        CxPathMatcher matcher = CxPathMatcher.compile(Collections.<String>emptyList());
+
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.matches("src/App.java"));
+        assertFalse(matcher.matchesDirectory("src"));
+    }
+
+    private static boolean matchesAny(List<String> globs, String path) {
+        for (String glob : globs) {
+            if (SelectorUtils.matchPath(glob, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> getDefaultExcludeGlobs() throws Exception {
+        Properties configuration = new Properties();
+        try (InputStream in = CxPathMatcherTest.class.getResourceAsStream("cxconfig.xml")) {
+            configuration.loadFromXML(in);
+        }
+        List<String> globs = new ArrayList<>();
+        for (String pattern : configuration.getProperty("DefaultFilterPattern").split(",")) {
+            String trimmed = pattern.trim();
+            if (trimmed.startsWith("!")) {
+                globs.add(trimmed.substring(1));
+            }
+        }
+        return globs;
+    }
+}
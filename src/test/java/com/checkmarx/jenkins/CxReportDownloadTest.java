@@ -0,0 +1,50 @@
+package com.checkmarx.jenkins;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class CxReportDownloadTest {
+
+    private static final long[] IGNORED = new long[0];
+
+    @Test
+    public void parsesSingleRanges() {
+        assertArrayEquals(new long[]{0, 99}, CxReportDownload.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, CxReportDownload.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{999, 999}, CxReportDownload.parseRange("bytes=999-999", 1000));
+        assertArrayEquals(new long[]{10, 20}, CxReportDownload.parseRange(" bytes= 10 - 20 ", 1000));
+    }
+
+    @Test
+    public void parsesSuffixRanges() {
+        assertArrayEquals(new long[]{900, 999}, CxReportDownload.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, CxReportDownload.parseRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void limitsRangesToTheLength() {
+        assertArrayEquals(new long[]{900, 999}, CxReportDownload.parseRange("bytes=900-5000", 1000));
+    }
+
+    @Test
+    public void rejectsUnsatisfiableRanges() {
+        assertNull(CxReportDownload.parseRange("bytes=1000-", 1000));
+        assertNull(CxReportDownload.parseRange("bytes=1000-2000", 1000));
+        assertNull(CxReportDownload.parseRange("bytes=5-4", 1000));
+        assertNull(CxReportDownload.parseRange("bytes=-0", 1000));
+        assertNull(CxReportDownload.parseRange("bytes=0-", 0));
+        assertNull(CxReportDownload.parseRange("bytes=-10", 0));
+    }
+
+    @Test
+    public void ignoresOtherRanges() {
+        // The whole file is sent for multiple ranges, other units and malformed headers.
+        assertArrayEquals(IGNORED, CxReportDownload.parseRange("bytes=0-1,5-6", 1000));
+        assertArrayEquals(IGNORED, CxReportDownload.parseRange("items=0-1", 1000));
+        assertArrayEquals(IGNORED, CxReportDownload.parseRange("bytes=5", 1000));
+        assertArrayEquals(IGNORED, CxReportDownload.parseRange("bytes=a-b", 1000));
+        assertArrayEquals(IGNORED, CxReportDownload.parseRange("bytes=-", 1000));
+    }
+}
@@ -0,0 +1,170 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.configuration.CxScanConfig;
+import mockit.Deencapsulation;
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.Mocked;
+import mockit.integration.junit4.JMockit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(JMockit.class)
+public class CxSessionPoolTest {
+
+    private static final Logger LOG = NOPLogger.NOP_LOGGER;
+
+    @Mocked
+    private CxShragaClient client;
+
+    private final CxSessionPool pool = CxSessionPool.getInstance();
+
+    @Before
+    public void setUp() {
+        new MockUp<CommonClientFactory>() {
+            @Mock
+            CxShragaClient getInstance(CxCredentials credentials, boolean enableCertificateValidation, Logger log) {
+                return client;
+            }
+
+            @Mock
+            CxShragaClient getInstance(CxScanConfig config, Logger log) {
+                return client;
+            }
+        };
+        pool.clear();
+    }
+
+    @After
+    public void tearDown() {
+        pool.clear();
+    }
+
+    @Test
+    public void reusesReturnedSessions() throws Exception {
+        long hits = pool.getHits();
+        long misses = pool.getMisses();
+
+        CxSessionPool.Session first = pool.lease(credentials("admin", "secret"), true, LOG);
+        first.close();
+        CxSessionPool.Session second = pool.lease(credentials("admin", "secret"), true, LOG);
+        second.close();
+
+        assertSame(first, second);
+        assertEquals(misses + 1, pool.getMisses());
+        assertEquals(hits + 1, pool.getHits());
+    }
+
+    @Test
+    public void leasesSessionsToOneCallerAtATime() throws Exception {
+        long misses = pool.getMisses();
+
+        CxSessionPool.Session first = pool.lease(credentials("admin", "secret"), true, LOG);
+        CxSessionPool.Session second = pool.lease(credentials("admin", "secret"), true, LOG);
+        first.close();
+        second.close();
+
+        assertNotSame(first, second);
+        assertEquals(misses + 2, pool.getMisses());
+    }
+
+    @Test
+    public void keepsSessionsOfOtherCredentialsApart() throws Exception {
+        CxSessionPool.Session admin = pool.lease(credentials("admin", "secret"), true, LOG);
+        admin.close();
+
+        CxSessionPool.Session otherPassword = pool.lease(credentials("admin", "other"), true, LOG);
+        otherPassword.close();
+        CxSessionPool.Session otherUser = pool.lease(credentials("auditor", "secret"), true, LOG);
+        otherUser.close();
+        CxSessionPool.Session noCertificateValidation = pool.lease(credentials("admin", "secret"), false, LOG);
+        noCertificateValidation.close();
+
+        assertNotSame(admin, otherPassword);
+        assertNotSame(admin, otherUser);
+        assertNotSame(admin, noCertificateValidation);
+        assertEquals(new CxSessionPool.SessionKey(credentials("admin", "secret"), true),
+                new CxSessionPool.SessionKey(credentials("admin", "secret"), true));
+    }
+
+    @Test
+    public void logsInAgainBeforeTheTokenExpires() throws Exception {
+        long refreshes = pool.getRefreshes();
+
+        CxSessionPool.Session session = pool.lease(credentials("admin", "secret"), true, LOG);
+        Deencapsulation.setField(session, "loggedInAt", 0L);
+        session.close();
+        CxSessionPool.Session reused = pool.lease(credentials("admin", "secret"), true, LOG);
+        reused.close();
+
+        assertSame(session, reused);
+        assertEquals(refreshes + 1, pool.getRefreshes());
+    }
+
+    @Test
+    public void discardsFailedSessions() throws Exception {
+        CxSessionPool.Session session = pool.lease(credentials("admin", "secret"), true, LOG);
+        session.markFailed();
+        session.close();
+
+        CxSessionPool.Session next = pool.lease(credentials("admin", "secret"), true, LOG);
+        next.close();
+
+        assertNotSame(session, next);
+    }
+
+    @Test
+    public void givesEachScanSessionItsOwnConfiguration() throws Exception {
+        CxScanConfig config = scanConfig();
+
+        CxSessionPool.Session first = pool.leaseForScan(config, LOG);
+        CxSessionPool.Session second = pool.leaseForScan(first.getConfig(), LOG);
+
+        assertNotSame(config, first.getConfig());
+        assertNotSame(config, second.getConfig());
+        assertNotSame(first.getConfig(), second.getConfig());
+
+        first.getConfig().setSourceDir("/workspace/one");
+        second.getConfig().setSourceDir("/workspace/two");
+        first.close();
+        second.close();
+
+        // Sessions returned to the pool take the settings of the next build, without changing each other.
+        CxScanConfig nextBuild = scanConfig();
+        nextBuild.setSourceDir("/workspace/three");
+        CxSessionPool.Session third = pool.leaseForScan(nextBuild, LOG);
+        CxSessionPool.Session fourth = pool.leaseForScan(scanConfig(), LOG);
+        assertNotSame(third.getConfig(), fourth.getConfig());
+        assertEquals("/workspace/three", third.getConfig().getSourceDir());
+        third.close();
+        fourth.close();
+    }
+
+    private static CxCredentials credentials(String username, String password) {
+        CxCredentials credentials = new CxCredentials();
+        credentials.setServerUrl("https://checkmarx.example.com");
+        credentials.setUsername(username);
+        credentials.setPassword(password);
+        return credentials;
+    }
+
+    private static CxScanConfig scanConfig() {
+        CxScanConfig config = new CxScanConfig();
+        config.setUrl("https://checkmarx.example.com");
+        config.setUsername("admin");
+        config.setPassword("secret");
+        config.setProjectName("demo");
+        config.setTeamPath("\\CxServer");
+        config.setSastEnabled(true);
+        return config;
+    }
+}
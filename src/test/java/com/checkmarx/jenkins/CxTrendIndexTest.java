@@ -0,0 +1,122 @@
+package com.checkmarx.jenkins;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CxTrendIndexTest {
+
+    @Test
+    public void sortsRecordsByBuildNumber() {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        add(builder, 7, 7000, CxTrendIndex.FLAG_SAST, 1);
+        add(builder, 3, 3000, CxTrendIndex.FLAG_SAST, 2);
+        add(builder, 5, 5000, CxTrendIndex.FLAG_DEPENDENCY_SCAN, 3);
+        CxTrendIndex.Snapshot trend = builder.build();
+
+        assertEquals(3, trend.size());
+        assertEquals(3, trend.getNumber(0));
+        assertEquals(5, trend.getNumber(1));
+        assertEquals(7, trend.getNumber(2));
+        assertEquals(5000, trend.getTimestamp(1));
+        assertEquals(2, trend.getCount(0, CxTrendIndex.HIGH));
+        assertEquals(3, trend.getCount(1, CxTrendIndex.DEPENDENCY_HIGH));
+        assertTrue(trend.isSast(0));
+        assertFalse(trend.isDependencyScan(0));
+        assertTrue(trend.isDependencyScan(1));
+    }
+
+    @Test
+    public void keepsTheLastRecordOfABuild() {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        add(builder, 1, 1000, CxTrendIndex.FLAG_SAST, 1);
+        add(builder, 2, 2000, CxTrendIndex.FLAG_SAST, 2);
+        add(builder, 1, 1000, CxTrendIndex.FLAG_SAST | CxTrendIndex.FLAG_REUSED, 9);
+        CxTrendIndex.Snapshot trend = builder.build();
+
+        assertEquals(2, trend.size());
+        assertEquals(9, trend.getCount(0, CxTrendIndex.HIGH));
+        assertTrue(trend.isReused(0));
+    }
+
+    @Test
+    public void addsToACopyOfASnapshot() {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        for (int number = 1; number <= 100; number++) {
+            add(builder, number, number * 1000L, CxTrendIndex.FLAG_SAST, number);
+        }
+        CxTrendIndex.Snapshot trend = builder.build();
+
+        CxTrendIndex.Builder copy = new CxTrendIndex.Builder(trend);
+        add(copy, 101, 101000, CxTrendIndex.FLAG_SAST, 101);
+        CxTrendIndex.Snapshot next = copy.build();
+
+        assertEquals(100, trend.size());
+        assertEquals(101, next.size());
+        for (int i = 0; i < next.size(); i++) {
+            assertEquals(i + 1, next.getNumber(i));
+            assertEquals(i + 1, next.getCount(i, CxTrendIndex.HIGH));
+        }
+    }
+
+    @Test
+    public void findsBuildsByNumberAndTime() {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        for (int number = 2; number <= 10; number += 2) {
+            add(builder, number, number * 1000L, CxTrendIndex.FLAG_SAST, 0);
+        }
+        CxTrendIndex.Snapshot trend = builder.build();
+
+        assertEquals(1, trend.indexOf(4));
+        assertTrue(trend.indexOf(5) < 0);
+
+        assertEquals(-1, trend.indexOfLastBefore(2));
+        assertEquals(0, trend.indexOfLastBefore(4));
+        assertEquals(1, trend.indexOfLastBefore(5));
+        assertEquals(4, trend.indexOfLastBefore(100));
+
+        assertEquals(0, trend.indexOfFirstAfter(1));
+        assertEquals(2, trend.indexOfFirstAfter(4));
+        assertEquals(2, trend.indexOfFirstAfter(5));
+        assertEquals(5, trend.indexOfFirstAfter(10));
+
+        assertEquals(0, trend.indexOfFirstSince(0));
+        assertEquals(1, trend.indexOfFirstSince(4000));
+        assertEquals(2, trend.indexOfFirstSince(4001));
+        assertEquals(5, trend.indexOfFirstSince(10001));
+    }
+
+    @Test
+    public void checksumChangesWithTheRecords() {
+        CxTrendIndex.Snapshot trend = snapshot(5);
+
+        assertEquals(trend.getChecksum(), snapshot(5).getChecksum());
+        assertNotEquals(trend.getChecksum(), snapshot(6).getChecksum());
+
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder(trend);
+        add(builder, 1, 1000, CxTrendIndex.FLAG_SAST, 42);
+        assertNotEquals(trend.getChecksum(), builder.build().getChecksum());
+    }
+
+    private static CxTrendIndex.Snapshot snapshot(int size) {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        for (int number = 1; number <= size; number++) {
+            add(builder, number, number * 1000L, CxTrendIndex.FLAG_SAST, number);
+        }
+        return builder.build();
+    }
+
+    private static void add(CxTrendIndex.Builder builder, int number, long timestamp, int flags, int count) {
+        int[] counts = new int[CxTrendIndex.COLUMNS];
+        if ((flags & CxTrendIndex.FLAG_SAST) != 0) {
+            counts[CxTrendIndex.HIGH] = count;
+        }
+        if ((flags & CxTrendIndex.FLAG_DEPENDENCY_SCAN) != 0) {
+            counts[CxTrendIndex.DEPENDENCY_HIGH] = count;
+        }
+        builder.add(number, timestamp, flags, counts, 0);
+    }
+}
@@ -0,0 +1,172 @@
+package com.checkmarx.jenkins;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CxTrendSeriesTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void findsTheLastBuildsWithTheFlag() {
+        Random random = new Random(42);
+        for (int size = 0; size <= 4 * CxTrendSeries.BLOCK_SIZE + 3; size++) {
+            CxTrendIndex.Snapshot trend = randomSnapshot(random, size);
+            for (int flag = CxTrendIndex.FLAG_SAST; flag <= CxTrendIndex.FLAG_DEPENDENCY_SCAN; flag++) {
+                CxTrendSeries.Blocks blocks = trend.getBlocks(flag);
+                for (int builds = 1; builds <= size + 2; builds++) {
+                    assertEquals("size " + size + ", flag " + flag + ", builds " + builds,
+                            countBack(trend, flag, builds), CxTrendSeries.indexOfLast(trend, blocks, flag, builds));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void showsTheWindowOneByOneAndBucketsTheRest() {
+        Random random = new Random(7);
+        for (int size : new int[]{10, 100, 1000, 5000}) {
+            CxTrendIndex.Snapshot trend = randomSnapshot(random, size);
+            int flag = CxTrendIndex.FLAG_SAST;
+            int windowBuilds = 5;
+            List<CxTrendSeries.Point> points = CxTrendSeries.create(trend, flag, windowBuilds, 0, 0);
+
+            int flagged = 0;
+            for (int i = 0; i < size; i++) {
+                if (trend.hasFlag(i, flag)) {
+                    flagged++;
+                }
+            }
+            int builds = 0;
+            for (CxTrendSeries.Point point : points) {
+                builds += point.getBuilds();
+                assertPoint(trend, flag, point);
+            }
+            assertEquals(flagged, builds);
+            assertTrue(points.size() <= windowBuilds + CxTrendSeries.MAX_BUCKETS);
+
+            for (int i = 0; i < windowBuilds; i++) {
+                assertFalse(points.get(points.size() - 1 - i).isBucket());
+            }
+            for (int i = 1; i < points.size(); i++) {
+                assertTrue(points.get(i - 1).getLastBuild() < points.get(i).getFirstBuild());
+            }
+        }
+    }
+
+    @Test
+    public void showsTheBuildsOfTheLastDaysOneByOne() {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        for (int number = 1; number <= 100; number++) {
+            add(builder, number, number * DAY, CxTrendIndex.FLAG_SAST, number);
+        }
+        CxTrendIndex.Snapshot trend = builder.build();
+
+        List<CxTrendSeries.Point> points = CxTrendSeries.create(trend, CxTrendIndex.FLAG_SAST, 0, 10, 100 * DAY);
+
+        // Builds 90 to 100 started within the last 10 days.
+        List<CxTrendSeries.Point> window = points.subList(points.size() - 11, points.size());
+        for (int i = 0; i < window.size(); i++) {
+            assertFalse(window.get(i).isBucket());
+            assertEquals(90 + i, window.get(i).getFirstBuild());
+        }
+        assertTrue(points.get(points.size() - 12).isBucket());
+        assertEquals(89, points.get(points.size() - 12).getLastBuild());
+    }
+
+    @Test
+    public void skipsBuildsWithoutTheFlag() {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        for (int number = 1; number <= 100; number++) {
+            add(builder, number, number * DAY, number % 2 == 0 ? CxTrendIndex.FLAG_DEPENDENCY_SCAN : CxTrendIndex.FLAG_SAST, number);
+        }
+        CxTrendIndex.Snapshot trend = builder.build();
+
+        List<CxTrendSeries.Point> points = CxTrendSeries.create(trend, CxTrendIndex.FLAG_DEPENDENCY_SCAN, 3, 0, 0);
+
+        // Builds 1 to 95 in buckets of 4, then builds 96, 98 and 100.
+        assertEquals(24 + 3, points.size());
+        CxTrendSeries.Point first = points.get(0);
+        assertEquals(2, first.getBuilds());
+        assertEquals(2, first.getFirstBuild());
+        assertEquals(4, first.getLastBuild());
+        assertEquals(2, first.getMin(CxTrendIndex.DEPENDENCY_HIGH));
+        assertEquals(4, first.getMax(CxTrendIndex.DEPENDENCY_HIGH));
+        assertEquals(4, first.getLast(CxTrendIndex.DEPENDENCY_HIGH));
+        assertEquals(96, points.get(24).getFirstBuild());
+        assertEquals(100, points.get(26).getLast(CxTrendIndex.DEPENDENCY_HIGH));
+    }
+
+    @Test
+    public void showsAllBuildsWithoutAWindow() {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        for (int number = 1; number <= 3; number++) {
+            add(builder, number, number * DAY, CxTrendIndex.FLAG_SAST, number);
+        }
+
+        List<CxTrendSeries.Point> points = CxTrendSeries.create(builder.build(), CxTrendIndex.FLAG_SAST, 0, 0, 0);
+
+        assertEquals(3, points.size());
+        assertEquals(3, points.get(2).getLast(CxTrendIndex.HIGH));
+    }
+
+    /**
+     * Compares the point with the records of its builds.
+     */
+    private static void assertPoint(CxTrendIndex.Snapshot trend, int flag, CxTrendSeries.Point point) {
+        int builds = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int last = 0;
+        for (int i = trend.indexOf(point.getFirstBuild()); i <= trend.indexOf(point.getLastBuild()); i++) {
+            if (trend.hasFlag(i, flag)) {
+                int count = trend.getCount(i, CxTrendIndex.HIGH);
+                builds++;
+                min = Math.min(min, count);
+                max = Math.max(max, count);
+                last = count;
+            }
+        }
+        assertEquals(builds, point.getBuilds());
+        assertEquals(min, point.getMin(CxTrendIndex.HIGH));
+        assertEquals(max, point.getMax(CxTrendIndex.HIGH));
+        assertEquals(last, point.getLast(CxTrendIndex.HIGH));
+    }
+
+    private static int countBack(CxTrendIndex.Snapshot trend, int flag, int builds) {
+        int remaining = builds;
+        for (int i = trend.size() - 1; i >= 0; i--) {
+            if (trend.hasFlag(i, flag) && --remaining == 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static CxTrendIndex.Snapshot randomSnapshot(Random random, int size) {
+        CxTrendIndex.Builder builder = new CxTrendIndex.Builder();
+        for (int number = 1; number <= size; number++) {
+            // Mostly SAST scans, some dependency scans and a few runs of builds without one or the other.
+            int flags = random.nextInt(10) < 7 ? CxTrendIndex.FLAG_SAST : 0;
+            if (random.nextInt(4) == 0) {
+                flags |= CxTrendIndex.FLAG_DEPENDENCY_SCAN;
+            }
+            add(builder, number, number * DAY, flags, random.nextInt(50));
+        }
+        return builder.build();
+    }
+
+    private static void add(CxTrendIndex.Builder builder, int number, long timestamp, int flags, int count) {
+        int[] counts = new int[CxTrendIndex.COLUMNS];
+        counts[CxTrendIndex.HIGH] = count;
+        counts[CxTrendIndex.DEPENDENCY_HIGH] = count;
+        builder.add(number, timestamp, flags, counts, 0);
+    }
+}
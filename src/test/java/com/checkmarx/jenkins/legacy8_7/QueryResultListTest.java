@@ -0,0 +1,128 @@
+package com.checkmarx.jenkins.legacy8_7;
+
+import com.thoughtworks.xstream.XStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryResultListTest {
+
+    /**
+     * The details as written before {@link QueryResultList}.
+     */
+    private static class LegacyDetails {
+        LinkedList<QueryResult> highQueryResultList;
+    }
+
+    private static class Details {
+        QueryResultList highQueryResultList;
+    }
+
+    private XStream legacyXStream;
+    private XStream xstream;
+
+    @Before
+    public void setUp() {
+        legacyXStream = new XStream();
+        legacyXStream.alias("details", LegacyDetails.class);
+        xstream = new XStream();
+        xstream.alias("details", Details.class);
+        xstream.registerConverter(new QueryResultList.ConverterImpl(xstream.getMapper()));
+    }
+
+    @Test
+    public void writesTheLinkedListForm() {
+        LegacyDetails legacy = new LegacyDetails();
+        legacy.highQueryResultList = new LinkedList<>();
+        legacy.highQueryResultList.add(queryResult("SQL_Injection", "High", 3));
+        legacy.highQueryResultList.add(queryResult("Reflected_XSS_All_Clients", "High", 1));
+        Details details = new Details();
+        details.highQueryResultList = new QueryResultList();
+        details.highQueryResultList.addAll(legacy.highQueryResultList);
+
+        assertEquals(legacyXStream.toXML(legacy), xstream.toXML(details));
+    }
+
+    @Test
+    public void readsTheLinkedListForm() {
+        LegacyDetails legacy = new LegacyDetails();
+        legacy.highQueryResultList = new LinkedList<>();
+        legacy.highQueryResultList.add(queryResult("SQL_Injection", "High", 3));
+        legacy.highQueryResultList.add(queryResult("Reflected_XSS_All_Clients", "High", 1));
+
+        Details details = (Details) xstream.fromXML(legacyXStream.toXML(legacy));
+
+        QueryResultList list = details.highQueryResultList;
+        assertEquals(2, list.size());
+        assertEquals("SQL_Injection", list.get(0).getName());
+        assertEquals("SQL Injection", list.get(0).getPrettyName());
+        assertEquals("High", list.get(0).getSeverity());
+        assertEquals(3, list.get(0).getCount());
+        assertEquals("Reflected XSS All Clients", list.get(1).getPrettyName());
+        assertEquals(1, list.get(1).getCount());
+    }
+
+    @Test
+    public void readsIncompleteElements() {
+        String xml = "<details>\n" +
+                "  <highQueryResultList>\n" +
+                "    <com.checkmarx.jenkins.legacy8_7.QueryResult>\n" +
+                "      <name>SQL_Injection</name>\n" +
+                "      <count>not a number</count>\n" +
+                "    </com.checkmarx.jenkins.legacy8_7.QueryResult>\n" +
+                "    <com.checkmarx.jenkins.legacy8_7.QueryResult/>\n" +
+                "  </highQueryResultList>\n" +
+                "</details>";
+
+        QueryResultList list = ((Details) xstream.fromXML(xml)).highQueryResultList;
+
+        assertEquals(2, list.size());
+        assertNull(list.get(0).getSeverity());
+        assertEquals(0, list.get(0).getCount());
+        assertNull(list.get(1).getName());
+        assertEquals("", list.get(1).getPrettyName());
+    }
+
+    @Test
+    public void readsEmptyLists() {
+        Details details = new Details();
+        details.highQueryResultList = new QueryResultList();
+
+        Details read = (Details) xstream.fromXML(xstream.toXML(details));
+
+        assertTrue(read.highQueryResultList.isEmpty());
+    }
+
+    @Test
+    public void keepsTheElementsInOrder() {
+        QueryResultList list = new QueryResultList();
+        for (int i = 0; i < 20; i++) {
+            list.add(queryResult("Query_" + i, "Low", i));
+        }
+        list.add(0, queryResult("First", "High", 100));
+        list.remove(5);
+        list.set(1, queryResult("Second", "Medium", 200));
+        list.trimToSize();
+
+        assertEquals(20, list.size());
+        assertEquals("First", list.get(0).getName());
+        assertEquals("Second", list.get(1).getPrettyName());
+        assertEquals(200, list.get(1).getCount());
+        assertEquals("Query_3", list.get(4).getName());
+        assertEquals("Query_5", list.get(5).getName());
+        assertEquals(19, list.get(19).getCount());
+    }
+
+    private static QueryResult queryResult(String name, String severity, int count) {
+        QueryResult result = new QueryResult();
+        result.setName(name);
+        result.setSeverity(severity);
+        result.setCount(count);
+        return result;
+    }
+}